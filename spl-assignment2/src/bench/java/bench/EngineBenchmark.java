@@ -0,0 +1,109 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.SchedulingMode;
+import spl.lae.LinearAlgebraEngine;
+
+/**
+ * LinearAlgebraEngine.run end to end on square matrices.
+ * The engine consumes its tree, so every invocation gets a fresh one built from the same inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    public enum Mix {
+        ADD,      // A + B + C + D
+        MULTIPLY, // A * B
+        MIXED     // A * B + -T(C) + D
+    }
+
+    @Param({"128", "512"})
+    public int size;
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    @Param({"ADD", "MULTIPLY", "MIXED"})
+    public Mix mix;
+
+    @Param({"HANDOFF", "WORK_STEALING"})
+    public SchedulingMode mode;
+
+    private LinearAlgebraEngine engine;
+    private double[][][] inputs;
+    private ComputationNode tree;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        engine = new LinearAlgebraEngine(threads, LinearAlgebraEngine.DEFAULT_TILE_SIZE, mode);
+        Random random = new Random(42);
+        inputs = new double[4][][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = SharedMatrixBenchmark.randomMatrix(random, size, size);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        tree = buildTree();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        engine.getExecutor().shutdown();
+    }
+
+    @Benchmark
+    public ComputationNode run() {
+        return engine.run(tree);
+    }
+
+    private ComputationNode buildTree() {
+        ComputationNode a = leaf(0);
+        ComputationNode b = leaf(1);
+        switch (mix) {
+            case ADD:
+                return node(ComputationNodeType.ADD, a, b, leaf(2), leaf(3));
+            case MULTIPLY:
+                return node(ComputationNodeType.MULTIPLY, a, b);
+            default:
+                return node(ComputationNodeType.ADD,
+                        node(ComputationNodeType.MULTIPLY, a, b),
+                        node(ComputationNodeType.NEGATE, node(ComputationNodeType.TRANSPOSE, leaf(2))),
+                        leaf(3));
+        }
+    }
+
+    // the engine works in place on its leaves' rows
+    private ComputationNode leaf(int index) {
+        return new ComputationNode(SharedMatrixBenchmark.copy(inputs[index]));
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, Arrays.asList(children));
+    }
+}
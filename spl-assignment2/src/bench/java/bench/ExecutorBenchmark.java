@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import scheduling.SchedulingMode;
+import scheduling.TiredExecutor;
+
+/**
+ * Dispatch cost of TiredExecutor: a batch of tiny tasks, so the time is almost all scheduling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    @Param({"HANDOFF", "WORK_STEALING"})
+    public SchedulingMode mode;
+
+    @Param({"1000"})
+    public int tasks;
+
+    @Param({"100"})
+    public int tokensPerTask; // Blackhole.consumeCPU work inside each task
+
+    private TiredExecutor executor;
+    private List<Runnable> batch;
+
+    @Setup
+    public void setup() {
+        executor = new TiredExecutor(threads, mode);
+        batch = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            batch.add(() -> Blackhole.consumeCPU(tokensPerTask));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void submitAll() {
+        executor.submitAll(batch);
+    }
+}
@@ -0,0 +1,79 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import memory.MatrixStorage;
+import memory.SharedMatrix;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedMatrixBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    @Param({"PER_VECTOR", "FLAT"})
+    public MatrixStorage storage;
+
+    private double[][] data;
+    private SharedMatrix loaded;
+
+    @Setup
+    public void setup() {
+        data = randomMatrix(new Random(42), size, size);
+        loaded = SharedMatrix.withStorage(storage);
+        loaded.loadRowMajor(copy(data));
+    }
+
+    @Benchmark
+    public SharedMatrix loadRowMajor() {
+        SharedMatrix matrix = SharedMatrix.withStorage(storage);
+        matrix.loadRowMajor(data);
+        return matrix;
+    }
+
+    @Benchmark
+    public SharedMatrix loadColumnMajor() {
+        SharedMatrix matrix = SharedMatrix.withStorage(storage);
+        matrix.loadColumnMajor(data);
+        return matrix;
+    }
+
+    @Benchmark
+    public double[][] readRowMajor() {
+        return loaded.readRowMajor();
+    }
+
+    static double[][] randomMatrix(Random random, int rows, int cols) {
+        double[][] m = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            m[i] = SharedVectorBenchmark.randomArray(random, cols);
+        }
+        return m;
+    }
+
+    static double[][] copy(double[][] m) {
+        double[][] ans = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            ans[i] = m[i].clone();
+        }
+        return ans;
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import memory.SharedVector;
+import memory.VectorOrientation;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedVectorBenchmark {
+
+    @Param({"64", "1024", "65536"})
+    public int length;
+
+    private SharedVector row;
+    private SharedVector column;
+    private SharedVector addend;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        row = new SharedVector(randomArray(random, length), VectorOrientation.ROW_MAJOR);
+        column = new SharedVector(randomArray(random, length), VectorOrientation.COLUMN_MAJOR);
+        addend = new SharedVector(randomArray(random, length), VectorOrientation.ROW_MAJOR);
+    }
+
+    @Benchmark
+    public double dot() {
+        return row.dot(column);
+    }
+
+    @Benchmark
+    public SharedVector add() {
+        // the values drift, but add costs the same whatever they are
+        row.add(addend);
+        return row;
+    }
+
+    @Benchmark
+    public SharedVector negate() {
+        row.negate();
+        return row;
+    }
+
+    static double[] randomArray(Random random, int length) {
+        double[] data = new double[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextDouble() - 0.5;
+        }
+        return data;
+    }
+}
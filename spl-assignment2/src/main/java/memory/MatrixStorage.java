@@ -0,0 +1,12 @@
+package memory;
+/**
+ * How a SharedMatrix lays out its data in memory.
+ * PER_VECTOR gives every vector its own array and its own lock.
+ * FLAT packs all vectors back to back into one contiguous array (vector k starts at k * vectorLength)
+ * and shares a small number of region locks between neighbouring vectors.
+ * A FLAT matrix with more elements than fit in one array is stored PER_VECTOR instead.
+ */
+public enum MatrixStorage {
+    PER_VECTOR,
+    FLAT
+}
@@ -1,16 +1,40 @@
 package memory;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 public class SharedMatrix {
 
+    // max number of region locks of a FLAT matrix, neighbouring vectors share a lock
+    private static final int LOCK_STRIPES = 64;
+
     private volatile SharedVector[] vectors = {}; // underlying vectors
+    private final MatrixStorage storage;
 
     public SharedMatrix() {
         // TODO: initialize empty matrix
+        this(MatrixStorage.PER_VECTOR);
+    }
+
+    private SharedMatrix(MatrixStorage storage) {
+        this.storage = storage;
         this.vectors = new SharedVector[0];
     }
 
+    /**
+     * Creates an empty matrix whose load methods lay data out according to the given storage.
+     */
+    public static SharedMatrix withStorage(MatrixStorage storage) {
+        if (storage == null) {
+            throw new IllegalArgumentException("storage is null - on withStorage");
+        }
+        return new SharedMatrix(storage);
+    }
+
     public SharedMatrix(double[][] matrix) {
         // TODO: construct matrix as row-major SharedVectors
+        this.storage = MatrixStorage.PER_VECTOR;
         this.loadRowMajor(matrix);
     }
 
@@ -29,9 +53,18 @@ public class SharedMatrix {
                 throw new IllegalArgumentException("vector length in matrix invalid - on loadRowMajor");
             }
         }
-        SharedVector[] new_vectors = new SharedVector[matrix.length];
-        for (int i = 0; i < matrix.length; i++) {
-            new_vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+        SharedVector[] new_vectors;
+        if (this.storage == MatrixStorage.FLAT && fitsOneArray(matrix.length, vec_len)) {
+            double[] flat = new double[matrix.length * vec_len];
+            for (int i = 0; i < matrix.length; i++) {
+                System.arraycopy(matrix[i], 0, flat, i * vec_len, vec_len);
+            }
+            new_vectors = flatVectors(flat, matrix.length, vec_len, VectorOrientation.ROW_MAJOR);
+        } else {
+            new_vectors = new SharedVector[matrix.length];
+            for (int i = 0; i < matrix.length; i++) {
+                new_vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+            }
         }
         acquireAllVectorWriteLocks(this.vectors);
         SharedVector[] tmp = this.vectors;
@@ -54,13 +87,65 @@ public class SharedMatrix {
                 throw new IllegalArgumentException("vector length in matrix invalid - on loadColumnMajor");
             }
         }
-        SharedVector[] new_vectors = new SharedVector[matrix[0].length];
-        for (int i = 0; i < matrix[0].length; i++) {
-            double[] column_vector = new double[matrix.length];
-            for (int j = 0; j < matrix.length; j++) {
-                column_vector[j] = matrix[j][i];
+        SharedVector[] new_vectors;
+        if (this.storage == MatrixStorage.FLAT && fitsOneArray(matrix.length, vec_len)) {
+            // walk the input row by row so it is read sequentially, columns are written with a stride
+            int rows = matrix.length;
+            double[] flat = new double[rows * vec_len];
+            for (int j = 0; j < rows; j++) {
+                double[] row = matrix[j];
+                for (int i = 0; i < vec_len; i++) {
+                    flat[i * rows + j] = row[i];
+                }
+            }
+            new_vectors = flatVectors(flat, vec_len, rows, VectorOrientation.COLUMN_MAJOR);
+        } else {
+            new_vectors = new SharedVector[matrix[0].length];
+            for (int i = 0; i < matrix[0].length; i++) {
+                double[] column_vector = new double[matrix.length];
+                for (int j = 0; j < matrix.length; j++) {
+                    column_vector[j] = matrix[j][i];
+                }
+                new_vectors[i] = new SharedVector(column_vector, VectorOrientation.COLUMN_MAJOR);
+            }
+        }
+        acquireAllVectorWriteLocks(this.vectors);
+        SharedVector[] tmp = this.vectors;
+        this.vectors = new_vectors;
+        releaseAllVectorWriteLocks(tmp);
+    }
+
+    /**
+     * Loads a matrix given as its list of columns, columns[j] becoming column vector j.
+     * With PER_VECTOR storage the arrays are adopted as they are, so a matrix that is only
+     * known through its transpose can be read by columns without transposing it.
+     */
+    public void loadColumns(double[][] columns) {
+        if (columns == null) {
+            throw new IllegalArgumentException("matrix is null - on loadColumns");
+        }
+        if (columns.length == 0) {
+            this.vectors = new SharedVector[0];
+            return;
+        }
+        int vec_len = columns[0].length;
+        for (double[] vec : columns) {
+            if (vec.length != vec_len) {
+                throw new IllegalArgumentException("vector length in matrix invalid - on loadColumns");
+            }
+        }
+        SharedVector[] new_vectors;
+        if (this.storage == MatrixStorage.FLAT && fitsOneArray(columns.length, vec_len)) {
+            double[] flat = new double[columns.length * vec_len];
+            for (int i = 0; i < columns.length; i++) {
+                System.arraycopy(columns[i], 0, flat, i * vec_len, vec_len);
+            }
+            new_vectors = flatVectors(flat, columns.length, vec_len, VectorOrientation.COLUMN_MAJOR);
+        } else {
+            new_vectors = new SharedVector[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                new_vectors[i] = new SharedVector(columns[i], VectorOrientation.COLUMN_MAJOR);
             }
-            new_vectors[i] = new SharedVector(column_vector, VectorOrientation.COLUMN_MAJOR);
         }
         acquireAllVectorWriteLocks(this.vectors);
         SharedVector[] tmp = this.vectors;
@@ -90,19 +175,20 @@ public class SharedMatrix {
             }
             //check the vector orientation and react accordingly
             if (vec_ori == VectorOrientation.ROW_MAJOR) {
-                double[][] ans = new double[this.vectors.length][vec_len];
+                double[][] ans = new double[this.vectors.length][];
                 for (int i = 0; i < this.vectors.length; i++) {
-                    for (int j = 0; j < vec_len; j++) {
-                        ans[i][j] = vectors[i].get(j);
-                    }
+                    int start = vectors[i].rawOffset();
+                    ans[i] = Arrays.copyOfRange(vectors[i].rawData(), start, start + vec_len);
                 }
                 return ans;
             }
             else if (vec_ori == VectorOrientation.COLUMN_MAJOR) {
                 double[][] ans = new double[vec_len][this.vectors.length];
                 for (int i = 0; i < this.vectors.length; i++) {
+                    double[] column = vectors[i].rawData();
+                    int start = vectors[i].rawOffset();
                     for (int j = 0; j < vec_len; j++) {
-                        ans[j][i] = vectors[i].get(j);
+                        ans[j][i] = column[start + j];
                     }
                 }
                 return ans;
@@ -113,6 +199,49 @@ public class SharedMatrix {
         return null;
     }
 
+    /**
+     * Hands the contents over to the caller as a row-major double[][] and leaves this matrix empty.
+     * When every row is a whole array of its own (row-major PER_VECTOR data), those arrays are
+     * returned as they are instead of being copied; otherwise this falls back to readRowMajor.
+     */
+    public double[][] detachRowMajor() {
+        SharedVector[] vecs = this.vectors;
+        if (vecs == null) {
+            throw new IllegalArgumentException("matrix is null - on detachRowMajor");
+        }
+        acquireAllVectorWriteLocks(vecs);
+        try {
+            if (ownsRows(vecs)) {
+                double[][] ans = new double[vecs.length][];
+                for (int i = 0; i < vecs.length; i++) {
+                    ans[i] = vecs[i].rawData();
+                }
+                this.vectors = new SharedVector[0];
+                return ans;
+            }
+        } finally {
+            releaseAllVectorWriteLocks(vecs);
+        }
+        double[][] ans = readRowMajor();
+        this.vectors = new SharedVector[0];
+        return ans;
+    }
+
+    // true if every vector is a row that covers its whole backing array
+    private static boolean ownsRows(SharedVector[] vecs) {
+        if (vecs.length == 0) {
+            return false;
+        }
+        int vec_len = vecs[0].length();
+        for (SharedVector vec : vecs) {
+            if (vec.getOrientation() != VectorOrientation.ROW_MAJOR || vec.length() != vec_len
+                    || vec.rawOffset() != 0 || vec.rawData().length != vec_len) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public SharedVector get(int index) {
         // TODO: return vector at index
         return this.vectors[index];
@@ -123,6 +252,10 @@ public class SharedMatrix {
         return this.vectors.length;
     }
 
+    public MatrixStorage getStorage() {
+        return this.storage;
+    }
+
     public VectorOrientation getOrientation() {
         // TODO: return orientation
         if (this.vectors.length == 0) {
@@ -131,6 +264,33 @@ public class SharedMatrix {
         return this.vectors[0].getOrientation();
     }
 
+    // a FLAT matrix needs count * vec_len elements in one array, larger ones are stored PER_VECTOR
+    private static boolean fitsOneArray(int count, int vec_len) {
+        try {
+            Math.multiplyExact(count, vec_len);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    // splits one contiguous array into count vectors of vec_len elements, vector k starting at k * vec_len.
+    // vectors are grouped into consecutive regions that share a lock, so a sweep over neighbouring
+    // vectors keeps hitting the same lock and the matrix carries at most LOCK_STRIPES lock objects
+    private static SharedVector[] flatVectors(double[] flat, int count, int vec_len, VectorOrientation orientation) {
+        SharedVector[] new_vectors = new SharedVector[count];
+        int stripes = Math.min(count, LOCK_STRIPES);
+        ReadWriteLock[] locks = new ReadWriteLock[stripes];
+        for (int s = 0; s < stripes; s++) {
+            locks[s] = new ReentrantReadWriteLock();
+        }
+        for (int k = 0; k < count; k++) {
+            ReadWriteLock region = locks[(int) ((long) k * stripes / count)];
+            new_vectors[k] = new SharedVector(flat, k * vec_len, vec_len, orientation, region);
+        }
+        return new_vectors;
+    }
+
     private void acquireAllVectorReadLocks(SharedVector[] vecs) {
         // TODO: acquire read lock for each vector
         for (SharedVector vec : vecs) {
@@ -1,34 +1,80 @@
 package memory;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.concurrent.locks.ReadWriteLock;
 
 public class SharedVector {
 
     private double[] vector;
+    private int offset; // index of element 0 inside vector
+    private int length; // number of elements, vector may be longer when it is shared with other vectors
     private VectorOrientation orientation;
-    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    private final ReadWriteLock lock;
 
     public SharedVector(double[] vector, VectorOrientation orientation) {
         // TODO: store vector data and its orientation
+        this(vector, 0, vector.length, orientation, new java.util.concurrent.locks.ReentrantReadWriteLock());
+    }
+
+    /**
+     * Creates a vector over the span [offset, offset + length) of a backing array,
+     * guarded by the given lock. Used by SharedMatrix for flat storage, where many
+     * vectors share one array and one lock per region.
+     */
+    SharedVector(double[] vector, int offset, int length, VectorOrientation orientation, ReadWriteLock lock) {
         this.vector = vector;
+        this.offset = offset;
+        this.length = length;
         this.orientation = orientation;
+        this.lock = lock;
     }
 
     public double get(int index) {
         // TODO: return element at index (read-locked)
         readLock();
         try {
-            return this.vector[index];
+            return this.vector[this.offset + Objects.checkIndex(index, this.length)];
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the vector contents, taken under a single read lock.
+     */
+    public double[] toArray() {
+        readLock();
+        try {
+            return Arrays.copyOfRange(this.vector, this.offset, this.offset + this.length);
         } finally {
             readUnlock();
         }
     }
 
+    /**
+     * Returns the backing array itself, without copying or locking.
+     * The vector occupies rawData()[rawOffset() .. rawOffset() + length()).
+     * The caller must already hold this vector's read (or write) lock and keep holding it
+     * for as long as it uses the array; writes are only allowed under the write lock.
+     */
+    public double[] rawData() {
+        return this.vector;
+    }
+
+    /**
+     * Returns the index of this vector's first element inside rawData().
+     * Same locking rules as rawData().
+     */
+    public int rawOffset() {
+        return this.offset;
+    }
+
     public int length() {
         // TODO: return vector length
         readLock();
         try {
-            return this.vector.length;
+            return this.length;
         } finally {
             readUnlock();
         }
@@ -84,14 +130,18 @@ public class SharedVector {
         try {
             other.readLock();
             try {
-                if (this.vector.length != other.length()) {
+                if (this.length != other.length) {
                     throw new IllegalArgumentException("vector lengths do not match - on add vectors");
                 }
-                if (this.orientation != other.getOrientation()) {
+                if (this.orientation != other.orientation) {
                     throw new IllegalArgumentException("vector orientation do not match - on add vectors");
                 }
-                for (int i = 0; i < this.vector.length; i++) {
-                    this.vector[i] = this.vector[i] + other.get(i);
+                double[] data = this.vector;
+                double[] otherData = other.vector;
+                int off = this.offset;
+                int otherOff = other.offset;
+                for (int i = 0; i < this.length; i++) {
+                    data[off + i] = data[off + i] + otherData[otherOff + i];
                 }
             } finally {
                 other.readUnlock();
@@ -105,7 +155,7 @@ public class SharedVector {
         // TODO: negate vector
         writeLock();
         try {
-            for (int i = 0; i < this.vector.length; i++) {
+            for (int i = this.offset; i < this.offset + this.length; i++) {
                 this.vector[i] *= -1;
             }
         } finally {
@@ -119,18 +169,13 @@ public class SharedVector {
         try {
             other.readLock();
             try {
-                if (this.orientation != VectorOrientation.ROW_MAJOR || other.getOrientation() != VectorOrientation.COLUMN_MAJOR) {
+                if (this.orientation != VectorOrientation.ROW_MAJOR || other.orientation != VectorOrientation.COLUMN_MAJOR) {
                     throw new IllegalArgumentException("not ROW dot COLUMN - on dot vectors");
                 }
-                if (this.vector.length != other.length()) {
+                if (this.length != other.length) {
                     throw new IllegalArgumentException("ROW length != COLUMN length - on dot vectors");
                 }
-
-                double ans = 0;
-                for (int i = 0; i < this.vector.length; i++) {
-                    ans += this.vector[i] * other.get(i);
-                }
-                return ans;
+                return dotRaw(this.vector, this.offset, other.vector, other.offset, this.length);
             } finally {
                 other.readUnlock();
             }
@@ -139,6 +184,15 @@ public class SharedVector {
         }
     }
 
+    // plain array loop, callers hold the locks of both vectors
+    private static double dotRaw(double[] row, int rowOffset, double[] column, int columnOffset, int length) {
+        double ans = 0;
+        for (int i = 0; i < length; i++) {
+            ans += row[rowOffset + i] * column[columnOffset + i];
+        }
+        return ans;
+    }
+
     public void vecMatMul(SharedMatrix matrix) {
         // TODO: compute row-vector × matrix
         writeLock();
@@ -161,7 +215,10 @@ public class SharedVector {
                 resultVector[i] = this.dot(column);
             }
 
-            this.vector = resultVector;            
+            // the result gets its own array, so a vector that lived inside a flat matrix detaches from it
+            this.vector = resultVector;
+            this.offset = 0;
+            this.length = resultVector.length;
         } finally {
             writeUnlock();
         }
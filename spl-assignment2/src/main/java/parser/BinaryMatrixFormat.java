@@ -0,0 +1,384 @@
+package parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A binary alternative to the JSON input and output files. Doubles are stored as raw
+ * little-endian IEEE-754 values, so reading a matrix is a bulk copy out of the file through
+ * a fixed-size buffer, with no per-element parsing. Nothing is memory-mapped: a mapping can
+ * only be released by the garbage collector, and a single one cannot go past 2 GB.
+ *
+ * Layout (all numbers little-endian):
+ *   preamble  "LAEB", version u8, kind u8 (0 = tree, 1 = error), u16 reserved,
+ *             u32 node count, u32 header length in bytes
+ *   header    the tree in pre-order, one entry per node:
+ *             operator: u8 tag (1 +, 2 *, 3 -, 4 T), u32 operand count
+ *             matrix:   u8 tag 0, u32 rows, u32 cols, u64 payload offset
+ *   payloads  every matrix row-major, 8-byte aligned
+ * An error file has kind 1 and a u32 length followed by the UTF-8 message instead of a tree
+ * (length -1 for no message). A result is a tree that is a single matrix, so results can be
+ * fed back in as input.
+ */
+public class BinaryMatrixFormat {
+
+    public static final String EXTENSION = ".laeb";
+
+    private static final byte[] MAGIC = {'L', 'A', 'E', 'B'};
+    private static final byte VERSION = 1;
+    private static final byte KIND_TREE = 0;
+    private static final byte KIND_ERROR = 1;
+    private static final int PREAMBLE_BYTES = 16;
+    private static final int OPERATOR_BYTES = 5;
+    private static final int MATRIX_BYTES = 17;
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private static final byte TAG_MATRIX = 0;
+    private static final ComputationNodeType[] TAGS = {
+        ComputationNodeType.MATRIX, ComputationNodeType.ADD, ComputationNodeType.MULTIPLY,
+        ComputationNodeType.NEGATE, ComputationNodeType.TRANSPOSE
+    };
+
+    private BinaryMatrixFormat() {}
+
+    /**
+     * True if the file starts with the binary format's magic bytes.
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // keep reading until the magic is complete or the file ends
+            }
+            return !head.hasRemaining() && head.flip().equals(ByteBuffer.wrap(MAGIC));
+        }
+    }
+
+    /**
+     * Reads a computation tree. The file is closed again before this returns.
+     */
+    public static ComputationNode read(Path path) throws IOException, ParseException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            return readTree(channel, header.buffer, header.nodeCount, header.size);
+        }
+    }
+
+    /**
+     * Validates a file that holds a single matrix without reading its payload.
+     * shape receives the rows and columns; returns the payload's offset, for readPayload.
+     */
+    static long locateSingleMatrix(Path path, int[] shape) throws IOException, ParseException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            int at = header.buffer.position();
+            if (header.nodeCount != 1 || header.buffer.remaining() < MATRIX_BYTES
+                    || header.buffer.get() != TAG_MATRIX) {
+                throw new ParseException("Matrix file must hold a single matrix: " + path, at);
+            }
+            int rows = header.buffer.getInt();
+            int cols = header.buffer.getInt();
+            long offset = header.buffer.getLong();
+            checkPayload(rows, cols, offset, header.size, at);
+            shape[0] = rows;
+            shape[1] = cols;
+            return offset;
+        }
+    }
+
+    /**
+     * Reads a rows x cols payload found by locateSingleMatrix into fresh arrays.
+     */
+    static double[][] readPayload(Path path, long offset, int rows, int cols) throws IOException {
+        double[][] matrix = new double[rows][cols];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readDoubles(channel, offset, matrix);
+        }
+        return matrix;
+    }
+
+    // the validated header of an open file
+    private static class Header {
+        ByteBuffer buffer; // positioned right after the preamble
+        int nodeCount;
+        long size;
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException, ParseException {
+        long size = channel.size();
+        if (size < PREAMBLE_BYTES) {
+            throw new ParseException("Binary file too short for its preamble.", 0);
+        }
+        ByteBuffer preamble = readFully(channel, ByteBuffer.allocate(PREAMBLE_BYTES), 0)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        preamble.get(magic);
+        if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC))) {
+            throw new ParseException("Not a binary matrix file.", 0);
+        }
+        if (preamble.get() != VERSION) {
+            throw new ParseException("Unsupported binary format version.", 4);
+        }
+        byte kind = preamble.get();
+        preamble.getShort();
+        int nodeCount = preamble.getInt();
+        int headerBytes = preamble.getInt();
+        if (headerBytes < PREAMBLE_BYTES || headerBytes > size) {
+            throw new ParseException("Invalid header length: " + headerBytes, 12);
+        }
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(headerBytes), 0)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.position(PREAMBLE_BYTES);
+        if (kind == KIND_ERROR) {
+            throw new ParseException("The file holds an error: " + readError(header), PREAMBLE_BYTES);
+        }
+        if (kind != KIND_TREE) {
+            throw new ParseException("Unknown binary file kind: " + kind, 5);
+        }
+        Header ans = new Header();
+        ans.buffer = header;
+        ans.nodeCount = nodeCount;
+        ans.size = size;
+        return ans;
+    }
+
+    // rebuilds the pre-order header without recursion, a frame per operator still missing operands
+    private static ComputationNode readTree(FileChannel channel, ByteBuffer header, int nodeCount, long size)
+            throws IOException, ParseException {
+        Deque<List<ComputationNode>> operands = new ArrayDeque<>();
+        Deque<Integer> missing = new ArrayDeque<>();
+        Deque<ComputationNodeType> types = new ArrayDeque<>();
+        ComputationNode root = null;
+        for (int n = 0; n < nodeCount; n++) {
+            int at = header.position();
+            if (root != null) {
+                throw new ParseException("Header holds more than one tree.", at);
+            }
+            ComputationNode node;
+            try {
+                int tag = header.get();
+                if (tag < 0 || tag >= TAGS.length) {
+                    throw new ParseException("Unknown node tag: " + tag, at);
+                }
+                if (tag == TAG_MATRIX) {
+                    node = new ComputationNode(readMatrix(channel, header.getInt(), header.getInt(), header.getLong(), size, at));
+                } else {
+                    int count = header.getInt();
+                    if (count < 0) {
+                        throw new ParseException("Invalid operand count: " + count, at);
+                    }
+                    if (count > 0) {
+                        operands.push(new ArrayList<>(Math.min(count, 1024)));
+                        missing.push(count);
+                        types.push(TAGS[tag]);
+                        continue;
+                    }
+                    node = new ComputationNode(TAGS[tag], new ArrayList<>());
+                }
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("Header ends in the middle of a node.", at);
+            }
+            // hand the finished node to its parent, finishing every parent that becomes complete
+            while (node != null) {
+                if (operands.isEmpty()) {
+                    root = node;
+                    node = null;
+                } else {
+                    operands.peek().add(node);
+                    int left = missing.pop() - 1;
+                    if (left == 0) {
+                        node = new ComputationNode(types.pop(), operands.pop());
+                    } else {
+                        missing.push(left);
+                        node = null;
+                    }
+                }
+            }
+        }
+        if (root == null) {
+            throw new ParseException("Header ends before the tree is complete.", header.position());
+        }
+        return root;
+    }
+
+    private static double[][] readMatrix(FileChannel channel, int rows, int cols, long offset, long size, int at)
+            throws IOException, ParseException {
+        checkPayload(rows, cols, offset, size, at);
+        double[][] matrix = new double[rows][cols];
+        readDoubles(channel, offset, matrix);
+        return matrix;
+    }
+
+    // any shape whose payload lies inside the file is accepted, 2 GB or more included
+    private static void checkPayload(int rows, int cols, long offset, long size, int at) throws ParseException {
+        if (rows < 0 || cols < 0) {
+            throw new ParseException("Invalid matrix shape: " + rows + "x" + cols, at);
+        }
+        // rows * cols stays below 2^62, so only the byte count can overflow
+        long elements = (long) rows * cols;
+        if (offset < 0 || offset % Double.BYTES != 0 || offset > size
+                || elements > (size - offset) / Double.BYTES) {
+            throw new ParseException("Matrix payload out of bounds at offset " + offset, at);
+        }
+    }
+
+    // fills the rows in order from the payload at offset, one chunk at a time
+    private static void readDoubles(FileChannel channel, long offset, double[][] matrix) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        DoubleBuffer doubles = DoubleBuffer.allocate(0);
+        long position = offset;
+        long end = offset + (matrix.length == 0 ? 0 : (long) matrix.length * matrix[0].length * Double.BYTES);
+        for (double[] row : matrix) {
+            int done = 0;
+            while (done < row.length) {
+                if (!doubles.hasRemaining()) {
+                    chunk.clear().limit((int) Math.min(CHUNK_BYTES, end - position));
+                    readFully(channel, chunk, position);
+                    position += chunk.limit();
+                    doubles = chunk.asDoubleBuffer();
+                }
+                int count = Math.min(doubles.remaining(), row.length - done);
+                doubles.get(row, done, count);
+                done += count;
+            }
+        }
+    }
+
+    // reads until buffer is full and returns it flipped, the file must be long enough
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Binary file ends early at byte " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readError(ByteBuffer header) throws ParseException {
+        try {
+            int length = header.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] message = new byte[length];
+            header.get(message);
+            return new String(message, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException e) {
+            throw new ParseException("Error message is truncated.", PREAMBLE_BYTES);
+        }
+    }
+
+    /**
+     * Writes a tree of operators over MATRIX leaves.
+     */
+    public static void write(ComputationNode root, Path path) throws IOException {
+        List<ComputationNode> preOrder = new ArrayList<>();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        int headerBytes = PREAMBLE_BYTES;
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            preOrder.add(node);
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                headerBytes += MATRIX_BYTES;
+            } else {
+                tagOf(node.getNodeType());
+                headerBytes += OPERATOR_BYTES;
+                List<ComputationNode> children = node.getChildren();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(align(headerBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        putPreamble(header, KIND_TREE, preOrder.size(), headerBytes);
+        List<double[][]> payloads = new ArrayList<>();
+        long offset = align(headerBytes);
+        for (ComputationNode node : preOrder) {
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                double[][] matrix = node.getMatrix();
+                int cols = matrix.length == 0 ? 0 : matrix[0].length;
+                header.put(TAG_MATRIX).putInt(matrix.length).putInt(cols).putLong(offset);
+                offset += (long) matrix.length * cols * Double.BYTES;
+                payloads.add(matrix);
+            } else {
+                header.put(tagOf(node.getNodeType())).putInt(node.getChildren().size());
+            }
+        }
+        header.position(header.limit());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header.flip());
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (double[][] matrix : payloads) {
+                int cols = matrix.length == 0 ? 0 : matrix[0].length;
+                for (double[] row : matrix) {
+                    if (row.length != cols) {
+                        throw new IllegalArgumentException("all rows must have the same length");
+                    }
+                    for (double value : row) {
+                        if (!chunk.hasRemaining()) {
+                            writeFully(channel, chunk.flip());
+                            chunk.clear();
+                        }
+                        chunk.putDouble(value);
+                    }
+                }
+            }
+            writeFully(channel, chunk.flip());
+        }
+    }
+
+    /**
+     * Writes an error file, the binary counterpart of {"error": message}.
+     */
+    public static void writeError(String message, Path path) throws IOException {
+        byte[] text = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        int headerBytes = PREAMBLE_BYTES + Integer.BYTES + text.length;
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        putPreamble(header, KIND_ERROR, 0, headerBytes);
+        header.putInt(message == null ? -1 : text.length).put(text);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header.flip());
+        }
+    }
+
+    private static void putPreamble(ByteBuffer header, byte kind, int nodeCount, int headerBytes) {
+        header.put(MAGIC).put(VERSION).put(kind).putShort((short) 0).putInt(nodeCount).putInt(headerBytes);
+    }
+
+    private static byte tagOf(ComputationNodeType type) {
+        for (byte tag = 1; tag < TAGS.length; tag++) {
+            if (TAGS[tag] == type) {
+                return tag;
+            }
+        }
+        throw new IllegalArgumentException("cannot write node of type " + type);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package parser;
+
+/**
+ * The multiplication order chosen for one chain of MULTIPLY operands by associativeNesting,
+ * together with the estimated cost of the chosen order and of plain left-to-right evaluation.
+ * Operands are named M0..Mn-1 in their original order.
+ */
+public class ChainPlan {
+
+    private final String order;
+    private final long leftToRightFlops;
+    private final long optimalFlops;
+
+    public ChainPlan(String order, long leftToRightFlops, long optimalFlops) {
+        this.order = order;
+        this.leftToRightFlops = leftToRightFlops;
+        this.optimalFlops = optimalFlops;
+    }
+
+    public String getOrder() {
+        return order;
+    }
+
+    public long getLeftToRightFlops() {
+        return leftToRightFlops;
+    }
+
+    public long getOptimalFlops() {
+        return optimalFlops;
+    }
+
+    public long getSavedFlops() {
+        return leftToRightFlops - optimalFlops;
+    }
+
+    @Override
+    public String toString() {
+        return "Multiply order " + order + ": " + optimalFlops + " flops instead of " + leftToRightFlops;
+    }
+}
\ No newline at end of file
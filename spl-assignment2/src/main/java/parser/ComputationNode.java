@@ -1,12 +1,18 @@
 package parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ComputationNode {
 
+    // longest MULTIPLY chain that gets an optimal order, the search is cubic in the chain length
+    private static final int MAX_CHAIN_ORDERING = 512;
+
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private boolean transposedView = false; // matrix holds the transpose of this node's value
+    private MatrixFile matrixFile = null; // where matrix is loaded from on first use
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -38,6 +44,24 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    /**
+     * A leaf whose matrix stays in the given file until it is first needed.
+     */
+    public ComputationNode(MatrixFile matrixFile) {
+        if (matrixFile == null) {
+            throw new IllegalArgumentException("matrix file is null - on ComputationNode");
+        }
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.matrixFile = matrixFile;
+    }
+
+    /**
+     * True while the node's matrix has not been loaded from its file yet.
+     */
+    public boolean isFileBacked() {
+        return matrixFile != null;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -71,13 +95,137 @@ public class ComputationNode {
      * are nested in a left-associative manner.
      * For example, A + B + C becomes (A + B) + C.
      * Effectively, this converts n-ary operations (n > 2) into binary operations.
+     * MULTIPLY chains whose operand shapes are known are nested in the cheapest order instead,
+     * for example A * B * C with A 1000x10, B 10x1000, C 1000x10 becomes A * (B * C).
      */
     public void associativeNesting() {
-        if (children != null && children.size() > 2) {
-            ComputationNode lastChild = children.remove(children.size() - 1);
-            ComputationNode newNode = new ComputationNode(nodeType, children);
-            children = List.of(newNode, lastChild);
-            newNode.associativeNesting();
+        associativeNesting(new ArrayList<>());
+    }
+
+    /**
+     * Same as associativeNesting(), and adds the order chosen for every reordered
+     * MULTIPLY chain to plans.
+     */
+    public void associativeNesting(List<ChainPlan> plans) {
+        if (children == null) {
+            return;
+        }
+        for (ComputationNode child : children) {
+            child.associativeNesting(plans);
+        }
+        if (children.size() <= 2) {
+            return;
+        }
+        if (nodeType == ComputationNodeType.MULTIPLY && children.size() <= MAX_CHAIN_ORDERING) {
+            long[] dims = chainDimensions(children);
+            if (dims != null) {
+                nestChainOptimally(dims, plans);
+                return;
+            }
+        }
+        ComputationNode nested = children.get(0);
+        for (int i = 1; i < children.size() - 1; i++) {
+            nested = new ComputationNode(nodeType, List.of(nested, children.get(i)));
+        }
+        children = List.of(nested, children.get(children.size() - 1));
+    }
+
+    // operand i of the chain is dims[i] x dims[i + 1], or null when the shapes are unknown or do not chain
+    private static long[] chainDimensions(List<ComputationNode> operands) {
+        long[] dims = new long[operands.size() + 1];
+        for (int i = 0; i < operands.size(); i++) {
+            int[] shape = operands.get(i).getShape();
+            if (shape == null || (i > 0 && shape[0] != dims[i])) {
+                return null;
+            }
+            dims[i] = shape[0];
+            dims[i + 1] = shape[1];
+        }
+        return dims;
+    }
+
+    // classic matrix-chain dynamic programming over the split points of the chain
+    private void nestChainOptimally(long[] dims, List<ChainPlan> plans) {
+        int n = children.size();
+        long[][] cost = new long[n][n];
+        int[][] split = new int[n][n];
+        for (int len = 2; len <= n; len++) {
+            for (int i = 0; i + len - 1 < n; i++) {
+                int j = i + len - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                // scan split points from the right so ties keep the left-associative order
+                for (int k = j - 1; k >= i; k--) {
+                    long c = cost[i][k] + cost[k + 1][j] + 2 * dims[i] * dims[k + 1] * dims[j + 1];
+                    if (c < cost[i][j]) {
+                        cost[i][j] = c;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+        long leftToRight = 0;
+        for (int k = 1; k < n; k++) {
+            leftToRight += 2 * dims[0] * dims[k] * dims[k + 1];
+        }
+        ComputationNode[] operands = children.toArray(new ComputationNode[0]);
+        ComputationNode left = buildChain(operands, split, 0, split[0][n - 1]);
+        ComputationNode right = buildChain(operands, split, split[0][n - 1] + 1, n - 1);
+        children = List.of(left, right);
+        plans.add(new ChainPlan(chainOrder(split, 0, n - 1), leftToRight, cost[0][n - 1]));
+    }
+
+    private static ComputationNode buildChain(ComputationNode[] operands, int[][] split, int i, int j) {
+        if (i == j) {
+            return operands[i];
+        }
+        ComputationNode left = buildChain(operands, split, i, split[i][j]);
+        ComputationNode right = buildChain(operands, split, split[i][j] + 1, j);
+        return new ComputationNode(ComputationNodeType.MULTIPLY, List.of(left, right));
+    }
+
+    private static String chainOrder(int[][] split, int i, int j) {
+        if (i == j) {
+            return "M" + i;
+        }
+        return "(" + chainOrder(split, i, split[i][j]) + " " + chainOrder(split, split[i][j] + 1, j) + ")";
+    }
+
+    /**
+     * Returns {rows, cols} of the matrix this node evaluates to, or null if it cannot be
+     * determined (for example when operand shapes do not match).
+     */
+    public int[] getShape() {
+        if (nodeType == null) {
+            return null;
+        }
+        switch (nodeType) {
+            case MATRIX:
+                if (matrixFile != null) {
+                    return matrixFile.shape();
+                }
+                if (matrix == null) {
+                    return null;
+                }
+                int rows = matrix.length;
+                int cols = rows == 0 ? 0 : matrix[0].length;
+                return transposedView ? new int[]{cols, rows} : new int[]{rows, cols};
+            case NEGATE:
+            case ADD:
+                return children.isEmpty() ? null : children.get(0).getShape();
+            case TRANSPOSE: {
+                int[] shape = children.isEmpty() ? null : children.get(0).getShape();
+                return shape == null ? null : new int[]{shape[1], shape[0]};
+            }
+            case MULTIPLY: {
+                if (children.isEmpty()) {
+                    return null;
+                }
+                int[] first = children.get(0).getShape();
+                int[] last = children.get(children.size() - 1).getShape();
+                return first == null || last == null ? null : new int[]{first[0], last[1]};
+            }
+            default:
+                return null;
         }
     }
 
@@ -88,14 +236,74 @@ public class ComputationNode {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.transposedView = false;
+        this.matrixFile = null;
+    }
+
+    /**
+     * Resolves the node to the transpose of the given matrix without moving any data.
+     * The transposed copy is only built if getMatrix() is called; consumers that can read
+     * a transposed operand use getStoredMatrix() and isTransposedView() instead.
+     */
+    public void resolveTransposed(double[][] matrix) {
+        resolve(matrix);
+        this.transposedView = true;
+    }
+
+    public boolean isTransposedView() {
+        return transposedView;
     }
 
     public double[][] getMatrix() {
+        loadFromFile();
+        if (matrix == null) {
+            throw new IllegalStateException("This node does not contain a matrix.");
+        }
+        if (transposedView) {
+            matrix = transposeOf(matrix);
+            transposedView = false;
+        }
+        return matrix;
+    }
+
+    /**
+     * The matrix as it is stored, which is the transpose of getMatrix() when isTransposedView().
+     */
+    public double[][] getStoredMatrix() {
+        loadFromFile();
         if (matrix == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
         return matrix;
     }
 
+    private void loadFromFile() {
+        if (matrixFile != null) {
+            matrix = matrixFile.load();
+            matrixFile = null;
+        }
+    }
+
+    // copies in square blocks so both the source rows and the target rows stay in cache
+    private static double[][] transposeOf(double[][] source) {
+        final int block = 32;
+        int rows = source.length;
+        int cols = rows == 0 ? 0 : source[0].length;
+        double[][] ans = new double[cols][rows];
+        for (int i0 = 0; i0 < rows; i0 += block) {
+            int i1 = Math.min(rows, i0 + block);
+            for (int j0 = 0; j0 < cols; j0 += block) {
+                int j1 = Math.min(cols, j0 + block);
+                for (int i = i0; i < i1; i++) {
+                    double[] row = source[i];
+                    for (int j = j0; j < j1; j++) {
+                        ans[j][i] = row[j];
+                    }
+                }
+            }
+        }
+        return ans;
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reusable evaluation order for a computation tree.
+ * The tree is walked once, recording for every operation node its parent and how many of its
+ * children are still pending. A node enters the ready queue when its last pending child is
+ * resolved, so finding the next node to compute is O(1) instead of a walk from the root.
+ * With elementwise fusion, ADD, NEGATE and TRANSPOSE nodes directly below another elementwise
+ * node are not scheduled on their own: the topmost node of such a region waits for the operands
+ * below the whole region and is expected to evaluate the region in one pass.
+ * Not thread-safe: the thread that drives the evaluation should own the plan.
+ */
+public class EvaluationPlan {
+
+    private final ComputationNode root;
+    private final List<ComputationNode> postOrder = new ArrayList<>(); // operation nodes, children first
+    private final Map<ComputationNode, Integer> index = new IdentityHashMap<>();
+    private final int[] parent; // index of the parent in postOrder, -1 for the root
+    private final int[] pending; // children that are not resolved yet, -1 once the node itself is
+    private final Deque<ComputationNode> ready = new ArrayDeque<>();
+    private int remaining;
+
+    public EvaluationPlan(ComputationNode root) {
+        this(root, false);
+    }
+
+    public EvaluationPlan(ComputationNode root, boolean fuseElementwise) {
+        if (root == null) {
+            throw new IllegalArgumentException("root is null - on EvaluationPlan");
+        }
+        this.root = root;
+        Map<ComputationNode, ComputationNode> scheduledParent = new IdentityHashMap<>();
+        buildPostOrder(fuseElementwise, scheduledParent);
+        this.parent = new int[postOrder.size()];
+        this.pending = new int[postOrder.size()];
+        for (int i = 0; i < postOrder.size(); i++) {
+            ComputationNode p = scheduledParent.get(postOrder.get(i));
+            parent[i] = p == null ? -1 : index.get(p);
+            if (p != null) {
+                pending[parent[i]]++;
+            }
+        }
+        for (int i = 0; i < postOrder.size(); i++) {
+            if (pending[i] == 0) {
+                ready.add(postOrder.get(i));
+            }
+        }
+        this.remaining = postOrder.size();
+    }
+
+    /**
+     * True for the operations that work element by element and can be fused into one pass.
+     */
+    public static boolean isElementwise(ComputationNodeType type) {
+        return type == ComputationNodeType.ADD || type == ComputationNodeType.NEGATE
+                || type == ComputationNodeType.TRANSPOSE;
+    }
+
+    // iterative post-order walk, so long left-nested chains do not overflow the stack.
+    // records for every scheduled node the closest scheduled ancestor
+    private void buildPostOrder(boolean fuseElementwise, Map<ComputationNode, ComputationNode> scheduledParent) {
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        Deque<ComputationNode> ancestors = new ArrayDeque<>(); // scheduled ancestor of the node on the same level of stack
+        Deque<ComputationNode> output = new ArrayDeque<>();
+        stack.push(root);
+        ancestors.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            ComputationNode ancestor = ancestors.pop();
+            // the scheduled ancestor is elementwise exactly when the direct parent is
+            boolean absorbed = fuseElementwise && node != root
+                    && isElementwise(node.getNodeType()) && isElementwise(ancestor.getNodeType());
+            ComputationNode scheduled = ancestor;
+            if (!absorbed) {
+                output.push(node);
+                if (node != root) {
+                    scheduledParent.put(node, ancestor);
+                }
+                scheduled = node;
+            }
+            for (ComputationNode child : node.getChildren()) {
+                if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                    stack.push(child);
+                    ancestors.push(scheduled);
+                }
+            }
+        }
+        while (!output.isEmpty()) {
+            ComputationNode node = output.pop();
+            index.put(node, postOrder.size());
+            postOrder.add(node);
+        }
+    }
+
+    /**
+     * Returns the next node whose operands are all matrices, or null if none is ready right now.
+     */
+    public ComputationNode pollReady() {
+        return ready.poll();
+    }
+
+    /**
+     * Removes and returns every node that is ready right now. The nodes are independent
+     * of each other and can be computed at the same time.
+     */
+    public List<ComputationNode> takeReady() {
+        List<ComputationNode> ans = new ArrayList<>(ready);
+        ready.clear();
+        return ans;
+    }
+
+    /**
+     * Records that node has been resolved, which may make its parent ready.
+     */
+    public void markResolved(ComputationNode node) {
+        Integer i = index.get(node);
+        if (i == null) {
+            throw new IllegalArgumentException("node is not part of this plan - on markResolved");
+        }
+        if (node.getNodeType() != ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("node was not resolved - on markResolved");
+        }
+        if (pending[i] < 0) {
+            throw new IllegalStateException("node was already marked - on markResolved");
+        }
+        pending[i] = -1;
+        remaining--;
+        int p = parent[i];
+        if (p >= 0) {
+            pending[p]--;
+            if (pending[p] == 0) {
+                ready.add(postOrder.get(p));
+            }
+        }
+    }
+
+    /**
+     * True once every operation node of the tree has been resolved.
+     */
+    public boolean isDone() {
+        return remaining == 0;
+    }
+
+    public ComputationNode getRoot() {
+        return root;
+    }
+
+    /**
+     * The operation nodes of the tree in post-order (every node after its children).
+     */
+    public List<ComputationNode> getOrder() {
+        return Collections.unmodifiableList(postOrder);
+    }
+}
\ No newline at end of file
@@ -1,68 +1,181 @@
 package parser;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.*;
 
+/**
+ * Reads the computation tree straight off the token stream, without building a JSON tree first.
+ * Matrix rows are filled as the numbers arrive, so the input is held in memory only once, as the
+ * double[][] leaves themselves. Files in the binary format (see BinaryMatrixFormat) are
+ * recognized by their first bytes and read with bulk copies of their payloads instead.
+ * A leaf may also be {"file": "path"}, a matrix file (binary or JSON) relative to the input
+ * file; it is only read when the engine first loads it (see MatrixFile), and every reference
+ * to the same file shares one MatrixFile.
+ */
 public class InputParser {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = new JsonFactory();
+    private Path baseDir; // where file references are resolved from
+    private final Map<Path, MatrixFile> files = new HashMap<>();
 
     public ComputationNode parse(String inputPath) throws ParseException {
         try {
-            File inputFile = new File(inputPath);
-            JsonNode rootJsonNode = mapper.readTree(inputFile);
-            ComputationNode root = parseJsonNode(rootJsonNode);
-            return root;
+            Path path = Paths.get(inputPath);
+            baseDir = path.toAbsolutePath().getParent();
+            files.clear();
+            if (Files.isRegularFile(path) && BinaryMatrixFormat.isBinary(path)) {
+                return BinaryMatrixFormat.read(path);
+            }
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input file: " + e.getMessage(), 0);
+        }
+        try (JsonParser parser = factory.createParser(new File(inputPath))) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new ParseException("Invalid node structure: empty input", 0);
+            }
+            return parseNode(parser);
         } catch (IOException e) {
             throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
         }
     }
 
-    private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
-        if (jsonNode.has("operator") && jsonNode.has("operands")) {
-            String operatorStr = jsonNode.get("operator").asText();
-            ArrayNode operandJsonNodes = (ArrayNode) jsonNode.get("operands");
-            List<ComputationNode> operands = new ArrayList<>();
-            for (int i = 0; i < operandJsonNodes.size(); i++) {
-                operands.add(parseJsonNode(operandJsonNodes.get(i)));
-            }
-            return new ComputationNode(operatorStr, operands);
+    // parses the value starting at the current token, leaves the parser on its last token
+    private ComputationNode parseNode(JsonParser parser) throws IOException, ParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return parseObject(parser);
         }
-        else if (jsonNode.isArray()) {
-            if (jsonNode.size() == 0) {
-                throw new ParseException("Empty array cannot be parsed as DataNode.", 0);
+        else if (token == JsonToken.START_ARRAY) {
+            return new ComputationNode(parseMatrix(parser));
+        }
+        else { throw error(parser, "Invalid node structure: " + parser.getText()); }
+    }
+
+    // an operator node or a file reference
+    private ComputationNode parseObject(JsonParser parser) throws IOException, ParseException {
+        String operatorStr = null;
+        List<ComputationNode> operands = null;
+        String file = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("file")) {
+                if (value != JsonToken.VALUE_STRING) {
+                    throw error(parser, "Invalid file reference: expected a string");
+                }
+                file = parser.getText();
+            }
+            else if (field.equals("operator")) {
+                if (!value.isScalarValue()) {
+                    throw error(parser, "Invalid operator: expected a string");
+                }
+                operatorStr = parser.getText();
             }
-            // Check if it's a vector (1D array)
-            if (jsonNode.get(0).isNumber()) {
-                throw new ParseException("Vectors (1D arrays) are not supported as standalone nodes.", 0);
+            else if (field.equals("operands")) {
+                if (value != JsonToken.START_ARRAY) {
+                    throw error(parser, "Invalid operands: expected an array");
+                }
+                operands = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    operands.add(parseNode(parser));
+                }
             }
-            // Otherwise, it's a matrix (2D array)
             else {
-                double[][] matrix = new double[jsonNode.size()][];
-                int width = jsonNode.get(0).size();
-                for (int i = 0; i < jsonNode.size(); i++) {
-                    JsonNode rowJsonNode = jsonNode.get(i);
-                    if (rowJsonNode.size() != width) {
-                        throw new ParseException("Inconsistent row sizes in matrix.", 0);
-                    }
-                    if (!rowJsonNode.isArray()) {
-                        throw new ParseException("Invalid matrix row: " + rowJsonNode.toString(), 0);
-                    }
-                    matrix[i] = new double[rowJsonNode.size()];
-                    for (int j = 0; j < rowJsonNode.size(); j++) {
-                        matrix[i][j] = rowJsonNode.get(j).asDouble();
-                    }
-                }
-                return new ComputationNode(matrix);
+                parser.skipChildren();
+            }
+        }
+        if (file != null) {
+            if (operatorStr != null || operands != null) {
+                throw error(parser, "Invalid node structure: a file reference cannot have operands");
+            }
+            return new ComputationNode(matrixFile(parser, file));
+        }
+        if (operatorStr == null || operands == null) {
+            throw error(parser, "Invalid node structure: an operator node needs both \"operator\" and \"operands\"");
+        }
+        return new ComputationNode(operatorStr, operands);
+    }
+
+    private MatrixFile matrixFile(JsonParser parser, String file) throws ParseException {
+        Path path = (baseDir == null ? Paths.get(file) : baseDir.resolve(file)).toAbsolutePath().normalize();
+        if (!Files.isRegularFile(path)) {
+            throw error(parser, "Matrix file not found: " + file);
+        }
+        return files.computeIfAbsent(path, MatrixFile::new);
+    }
+
+    private double[][] parseMatrix(JsonParser parser) throws IOException, ParseException {
+        List<double[]> rows = new ArrayList<>();
+        int width = -1;
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            throw error(parser, "Empty array cannot be parsed as DataNode.");
+        }
+        // Check if it's a vector (1D array)
+        if (token.isNumeric()) {
+            throw error(parser, "Vectors (1D arrays) are not supported as standalone nodes.");
+        }
+        // Otherwise, it's a matrix (2D array)
+        while (token != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_ARRAY) {
+                throw error(parser, "Invalid matrix row: " + parser.getText());
+            }
+            double[] row = width == -1 ? parseFirstRow(parser) : parseRow(parser, width);
+            width = row.length;
+            rows.add(row);
+            token = parser.nextToken();
+        }
+        return rows.toArray(new double[rows.size()][]);
+    }
+
+    // the width is not known yet, collect into a growing buffer
+    private double[] parseFirstRow(JsonParser parser) throws IOException, ParseException {
+        double[] buffer = new double[16];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
             }
+            buffer[size++] = readElement(parser);
         }
-        else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private double[] parseRow(JsonParser parser, int width) throws IOException, ParseException {
+        double[] row = new double[width];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == width) {
+                throw error(parser, "Inconsistent row sizes in matrix.");
+            }
+            row[size++] = readElement(parser);
+        }
+        if (size != width) {
+            throw error(parser, "Inconsistent row sizes in matrix.");
+        }
+        return row;
+    }
+
+    private double readElement(JsonParser parser) throws IOException, ParseException {
+        if (!parser.currentToken().isScalarValue()) {
+            throw error(parser, "Invalid matrix element: " + parser.getText());
+        }
+        // same conversion as JsonNode.asDouble: numbers as they are, numeric strings parsed, null as 0
+        return parser.getValueAsDouble();
+    }
+
+    private static ParseException error(JsonParser parser, String message) {
+        return new ParseException(message, (int) parser.currentTokenLocation().getCharOffset());
     }
 
-}
\ No newline at end of file
+}
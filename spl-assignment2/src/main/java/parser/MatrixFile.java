@@ -0,0 +1,79 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * A matrix kept in a file of its own, shared by every leaf that references it.
+ * Nothing is read until a leaf asks for its shape or contents. A binary file's shape comes
+ * from its header alone, and every load reads the payload straight into fresh arrays, holding
+ * the file open only while it reads. A JSON file is parsed once.
+ * Every load returns fresh arrays, since the engine computes in place on its operands.
+ */
+public class MatrixFile {
+
+    private final Path path;
+    private boolean opened = false;
+    private final int[] shape = new int[2];
+    private long payloadOffset = -1; // binary files, where the row-major payload starts
+    private double[][] parsed = null; // JSON files
+
+    public MatrixFile(Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException("path is null - on MatrixFile");
+        }
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isOpened() {
+        return opened;
+    }
+
+    public synchronized int[] shape() {
+        open();
+        return shape.clone();
+    }
+
+    public synchronized double[][] load() {
+        open();
+        if (payloadOffset >= 0) {
+            try {
+                return BinaryMatrixFormat.readPayload(path, payloadOffset, shape[0], shape[1]);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("cannot read matrix file " + path + ": " + e.getMessage(), e);
+            }
+        }
+        double[][] matrix = new double[shape[0]][];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = parsed[i].clone();
+        }
+        return matrix;
+    }
+
+    private void open() {
+        if (opened) {
+            return;
+        }
+        try {
+            if (BinaryMatrixFormat.isBinary(path)) {
+                payloadOffset = BinaryMatrixFormat.locateSingleMatrix(path, shape);
+            } else {
+                ComputationNode node = new InputParser().parse(path.toString());
+                if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                    throw new IllegalArgumentException("matrix file holds an expression, not a matrix: " + path);
+                }
+                parsed = node.getMatrix();
+                shape[0] = parsed.length;
+                shape[1] = parsed.length == 0 ? 0 : parsed[0].length;
+            }
+        } catch (IOException | ParseException e) {
+            throw new IllegalArgumentException("cannot read matrix file " + path + ": " + e.getMessage(), e);
+        }
+        opened = true;
+    }
+}
@@ -1,13 +1,27 @@
 package parser;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
 
+/**
+ * Streams results to the output file with a JsonGenerator, one number at a time, so writing
+ * never builds a second copy of the matrix. PRETTY matches the indented layout of the object
+ * mapper; COMPACT puts every row on a line of its own; BINARY writes BinaryMatrixFormat.
+ */
 public class OutputWriter {
 
-    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    public enum Format { PRETTY, COMPACT, BINARY }
+
+    private static final JsonFactory factory = new JsonFactory();
+    private static final int SINK_BUFFER = 1 << 16;
 
     public static class ResultMatrix {
         public double[][] result;
@@ -22,13 +36,97 @@ public class OutputWriter {
     public OutputWriter() {}
 
     public static void write(double[][] matrix, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
+        write(matrix, filePath, Format.PRETTY);
+    }
+
+    public static void write(double[][] matrix, String filePath, Format format) throws IOException {
+        if (format == Format.BINARY) {
+            BinaryMatrixFormat.write(new ComputationNode(matrix), Paths.get(filePath));
+            return;
+        }
+        try (JsonGenerator generator = open(filePath, format)) {
+            generator.writeStartObject();
+            generator.writeFieldName("result");
+            generator.writeStartArray();
+            for (double[] row : matrix) {
+                generator.writeArray(row, 0, row.length);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
     }
 
     public static void write(String error, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
+        write(error, filePath, Format.PRETTY);
+    }
+
+    public static void write(String error, String filePath, Format format) throws IOException {
+        if (format == Format.BINARY) {
+            BinaryMatrixFormat.writeError(error, Paths.get(filePath));
+            return;
+        }
+        try (JsonGenerator generator = open(filePath, Format.PRETTY)) {
+            generator.writeStartObject();
+            generator.writeStringField("error", error);
+            generator.writeEndObject();
+        }
+    }
+
+    private static JsonGenerator open(String filePath, Format format) throws IOException {
+        OutputStream sink = new BufferedOutputStream(Files.newOutputStream(Paths.get(filePath)), SINK_BUFFER);
+        try {
+            JsonGenerator generator = factory.createGenerator(sink, JsonEncoding.UTF8);
+            generator.setPrettyPrinter(format == Format.COMPACT ? new RowPerLinePrinter() : new DefaultPrettyPrinter());
+            return generator;
+        } catch (IOException | RuntimeException e) {
+            // the generator owns the stream only once it exists
+            try {
+                sink.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    // no whitespace at all, except a line break before every row of the result
+    private static class RowPerLinePrinter extends MinimalPrettyPrinter {
+
+        private static final long serialVersionUID = 1L;
+
+        // the rows live in the array right below the top-level object
+        private static boolean inRows(JsonGenerator g) {
+            return g.getOutputContext().inArray() && g.getOutputContext().getParent().inObject();
+        }
+
+        @Override
+        public void beforeArrayValues(JsonGenerator g) throws IOException {
+            if (inRows(g)) {
+                g.writeRaw('\n');
+            }
+        }
+
+        @Override
+        public void writeArrayValueSeparator(JsonGenerator g) throws IOException {
+            g.writeRaw(',');
+            if (inRows(g)) {
+                g.writeRaw('\n');
+            }
+        }
+
+        @Override
+        public void writeEndArray(JsonGenerator g, int nrOfValues) throws IOException {
+            if (inRows(g)) {
+                g.writeRaw('\n');
+            }
+            g.writeRaw(']');
+        }
+
+        @Override
+        public void writeEndObject(JsonGenerator g, int nrOfEntries) throws IOException {
+            g.writeRaw('}');
+            g.writeRaw('\n');
+        }
     }
 
 }
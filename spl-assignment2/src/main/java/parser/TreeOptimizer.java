@@ -0,0 +1,174 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites a computation tree with algebraic identities so that fewer full-matrix passes are
+ * executed: T(T(A)) = A, -(-A) = A, (-A) * (-B) = A * B, (-A) + (-B) = -(A + B), T(-A) = -T(A),
+ * (-A) * B = -(A * B) when the product is no larger than A,
+ * and T(A * B) = T(B) * T(A) when transposing the operands is cheaper than transposing the product.
+ * Negations are carried up the tree as a sign and only turned back into NEGATE nodes where
+ * they cannot be cancelled or merged any further.
+ * The values are unchanged, but moving a negation can flip the sign of a zero:
+ * (-[[0]]) * [[1]] is 0.0 while -([[0]] * [[1]]) is -0.0.
+ */
+public class TreeOptimizer {
+
+    // a rewritten subtree: core evaluates to the original subtree, negated when negated is set
+    private static class Signed {
+        final ComputationNode core;
+        final boolean negated;
+
+        Signed(ComputationNode core, boolean negated) {
+            this.core = core;
+            this.negated = negated;
+        }
+    }
+
+    private final Map<ComputationNode, int[]> shapes = new IdentityHashMap<>();
+    private int removedNodes = 0;
+
+    /**
+     * Returns the root of an equivalent tree. Leaves are shared with the input tree,
+     * operation nodes are new.
+     */
+    public ComputationNode optimize(ComputationNode root) {
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return root;
+        }
+        EvaluationPlan plan = new EvaluationPlan(root);
+        Map<ComputationNode, Signed> rewritten = new IdentityHashMap<>();
+        // children come before their parents, so every operand is already rewritten
+        for (ComputationNode node : plan.getOrder()) {
+            List<Signed> operands = new ArrayList<>();
+            for (ComputationNode child : node.getChildren()) {
+                if (child.getNodeType() == ComputationNodeType.MATRIX) {
+                    shapes.put(child, child.getShape());
+                    operands.add(new Signed(child, false));
+                } else {
+                    operands.add(rewritten.remove(child));
+                }
+            }
+            rewritten.put(node, rewrite(node.getNodeType(), operands));
+        }
+        ComputationNode ans = materialize(rewritten.get(root));
+        int after = ans.getNodeType() == ComputationNodeType.MATRIX ? 0 : new EvaluationPlan(ans).getOrder().size();
+        removedNodes += plan.getOrder().size() - after;
+        shapes.clear();
+        return ans;
+    }
+
+    /**
+     * Net number of operation nodes removed by all optimize calls so far.
+     */
+    public int getRemovedNodes() {
+        return removedNodes;
+    }
+
+    private Signed rewrite(ComputationNodeType type, List<Signed> operands) {
+        if (type == ComputationNodeType.NEGATE && operands.size() == 1) {
+            Signed operand = operands.get(0);
+            return new Signed(operand.core, !operand.negated);
+        }
+        if (type == ComputationNodeType.TRANSPOSE && operands.size() == 1) {
+            Signed operand = operands.get(0);
+            return new Signed(transpose(operand.core), operand.negated);
+        }
+        if (type == ComputationNodeType.MULTIPLY && !operands.isEmpty()) {
+            List<ComputationNode> cores = new ArrayList<>();
+            int negatedCount = 0;
+            int smallest = -1; // the negated operand with the fewest elements
+            for (int i = 0; i < operands.size(); i++) {
+                Signed operand = operands.get(i);
+                cores.add(operand.core);
+                if (operand.negated) {
+                    negatedCount++;
+                    if (smallest == -1 || elements(shapes.get(operand.core)) < elements(shapes.get(cores.get(smallest)))) {
+                        smallest = i;
+                    }
+                }
+            }
+            int[] first = shapes.get(cores.get(0));
+            int[] last = shapes.get(cores.get(cores.size() - 1));
+            int[] shape = first == null || last == null ? null : new int[]{first[0], last[1]};
+            // negations cancel in pairs, one left over only moves to the product if that is no larger
+            boolean negated = false;
+            if (negatedCount % 2 == 1) {
+                long size = elements(shape);
+                if (size != Long.MAX_VALUE && size <= elements(shapes.get(cores.get(smallest)))) {
+                    negated = true;
+                } else {
+                    cores.set(smallest, materialize(operands.get(smallest)));
+                }
+            }
+            return new Signed(node(type, cores, shape), negated);
+        }
+        if (type == ComputationNodeType.ADD && !operands.isEmpty()) {
+            boolean allSame = true;
+            for (Signed operand : operands) {
+                allSame &= operand.negated == operands.get(0).negated;
+            }
+            List<ComputationNode> cores = new ArrayList<>();
+            for (Signed operand : operands) {
+                cores.add(allSame ? operand.core : materialize(operand));
+            }
+            int[] shape = shapes.get(cores.get(0));
+            return new Signed(node(type, cores, shape), allSame && operands.get(0).negated);
+        }
+        // anything else is kept as it is, the engine reports it
+        List<ComputationNode> cores = new ArrayList<>();
+        for (Signed operand : operands) {
+            cores.add(materialize(operand));
+        }
+        return new Signed(node(type, cores, null), false);
+    }
+
+    private ComputationNode transpose(ComputationNode core) {
+        if (core.getNodeType() == ComputationNodeType.TRANSPOSE) {
+            return core.getChildren().get(0);
+        }
+        int[] shape = shapes.get(core);
+        int[] transposedShape = shape == null ? null : new int[]{shape[1], shape[0]};
+        if (core.getNodeType() == ComputationNodeType.MULTIPLY && core.getChildren().size() == 2 && shape != null) {
+            ComputationNode a = core.getChildren().get(0);
+            ComputationNode b = core.getChildren().get(1);
+            long costA = transposeCost(a);
+            long costB = transposeCost(b);
+            if (costA >= 0 && costB >= 0 && costA + costB < (long) shape[0] * shape[1]) {
+                List<ComputationNode> operands = List.of(transpose(b), transpose(a));
+                return node(ComputationNodeType.MULTIPLY, operands, transposedShape);
+            }
+        }
+        return node(ComputationNodeType.TRANSPOSE, List.of(core), transposedShape);
+    }
+
+    // elements touched by transposing node, 0 if it cancels an existing transpose, -1 if unknown
+    private long transposeCost(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.TRANSPOSE) {
+            return 0;
+        }
+        int[] shape = shapes.get(node);
+        return shape == null ? -1 : (long) shape[0] * shape[1];
+    }
+
+    // number of elements of a matrix with the given shape, Long.MAX_VALUE if unknown
+    private static long elements(int[] shape) {
+        return shape == null ? Long.MAX_VALUE : (long) shape[0] * shape[1];
+    }
+
+    private ComputationNode materialize(Signed signed) {
+        if (!signed.negated) {
+            return signed.core;
+        }
+        return node(ComputationNodeType.NEGATE, List.of(signed.core), shapes.get(signed.core));
+    }
+
+    private ComputationNode node(ComputationNodeType type, List<ComputationNode> children, int[] shape) {
+        ComputationNode node = new ComputationNode(type, new ArrayList<>(children));
+        shapes.put(node, shape);
+        return node;
+    }
+}
\ No newline at end of file
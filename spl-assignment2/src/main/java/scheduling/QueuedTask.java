@@ -0,0 +1,35 @@
+package scheduling;
+
+/**
+ * A submitted task on its way to a worker. It reports to its batch when it is done, and
+ * remembers when it was submitted so the worker can record how long it waited.
+ */
+final class QueuedTask implements Runnable {
+
+    final long submittedAt = System.nanoTime();
+    private final Runnable task;
+    private final TiredExecutor.Batch batch;
+
+    QueuedTask(Runnable task, TiredExecutor.Batch batch) {
+        this.task = task;
+        this.batch = batch;
+    }
+
+    @Override
+    public void run() {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            batch.failed(e);
+            throw e; // the worker still reports it
+        } finally {
+            batch.taskDone();
+        }
+    }
+
+    // fails the task without running it, when no worker is left to run it
+    void cancel(Throwable cause) {
+        batch.failed(cause);
+        batch.taskDone();
+    }
+}
@@ -0,0 +1,53 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Work over a range of indices, usually matrix rows, that can be cut into chunks.
+ * Each chunk is submitted as one task, so the executor's per-task cost and the fatigue
+ * accounting happen once per chunk rather than once per row.
+ */
+@FunctionalInterface
+public interface RangeTask {
+
+    // below this many element operations a task is not worth its scheduling cost
+    int MIN_TASK_WORK = 1 << 14;
+    // chunks per worker, enough to even out uneven workers without making chunks tiny
+    int CHUNKS_PER_WORKER = 4;
+
+    /**
+     * Processes items [from, to).
+     */
+    void run(int from, int to);
+
+    /**
+     * Chunk length for items of the given cost (element operations per item) spread over
+     * the given number of workers: about CHUNKS_PER_WORKER chunks per worker, but never
+     * less than MIN_TASK_WORK operations per chunk.
+     */
+    static int chunkSize(int items, double itemCost, int workers) {
+        if (items <= 0) {
+            return 1;
+        }
+        int byWorkers = (int) Math.ceil(items / (double) (Math.max(1, workers) * CHUNKS_PER_WORKER));
+        int byWork = (int) Math.ceil(MIN_TASK_WORK / Math.max(1.0, itemCost));
+        return Math.max(1, Math.min(items, Math.max(byWorkers, byWork)));
+    }
+
+    /**
+     * One task per chunk of items [0, items).
+     */
+    static List<Runnable> split(int items, int chunk, RangeTask body) {
+        if (chunk < 1) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        for (int start = 0; start < items; start += chunk) {
+            final int from = start;
+            final int to = Math.min(items, start + chunk);
+            tasks.add(() -> body.run(from, to));
+        }
+        return tasks;
+    }
+}
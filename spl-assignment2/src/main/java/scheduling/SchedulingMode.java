@@ -0,0 +1,14 @@
+package scheduling;
+
+/**
+ * How a TiredExecutor hands tasks to its workers.
+ */
+public enum SchedulingMode {
+    /** Every task goes through the worker's single-slot handoff, to a worker picked by fatigue. */
+    HANDOFF,
+    /**
+     * Every worker owns a deque. Batches are spread over the deques up front, and workers that
+     * run dry steal from the others; less tired workers get to steal first.
+     */
+    WORK_STEALING
+}
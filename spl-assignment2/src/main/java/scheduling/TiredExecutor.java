@@ -1,107 +1,401 @@
 package scheduling;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleSupplier;
 
-public class TiredExecutor {
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runs tasks on TiredThreads, preferring the least tired ones.
+ * Picking a worker takes no lock: idle workers sit in a concurrent set ordered by fatigue (a
+ * worker's fatigue only changes while it is busy, so the order holds while it is in the set),
+ * and the total fatigue is kept up to date by each worker after every task instead of being
+ * summed on every submit. A submitter that has to wait parks, and a worker going idle wakes
+ * only the first one in line.
+ * submitAllAsync never waits: tasks no worker may take yet are parked in a backlog that
+ * workers drain as they go idle, and each call gets its own completion handle.
+ */
+public final class TiredExecutor {
 
     private final TiredThread[] workers;
-    private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
-    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final ConcurrentSkipListSet<TiredThread> idle = new ConcurrentSkipListSet<>(
+            Comparator.comparingDouble(TiredThread::getFatigue).thenComparingInt(TiredThread::getWorkerId));
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+    private final AtomicInteger liveWorkers; // workers not stopped by an Error
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>(); // parked submitters, in arrival order
+    private final DoubleAdder totalFatigue = new DoubleAdder();
+    private final double[] accountedFatigue; // each worker's share of totalFatigue, written only by that worker
+    private final List<ObjectName> mbeanNames = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> backlog = new ConcurrentLinkedQueue<>(); // async tasks waiting for a worker
+    private final SchedulingMode mode;
+
+    // the tasks of one submission and the handle that completes when the last of them is done
+    static final class Batch {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicInteger remaining;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Batch(int size) {
+            this.remaining = new AtomicInteger(size);
+            if (size == 0) {
+                done.complete(null);
+            }
+        }
+
+        Runnable track(Runnable task) {
+            return new QueuedTask(task, this);
+        }
+
+        void failed(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+
+        void taskDone() {
+            if (remaining.decrementAndGet() == 0) {
+                Throwable e = failure.get();
+                if (e == null) {
+                    done.complete(null);
+                } else {
+                    done.completeExceptionally(e);
+                }
+            }
+        }
+    }
 
     public TiredExecutor(int numThreads) {
+        this(numThreads, SchedulingMode.HANDOFF);
+    }
+
+    public TiredExecutor(int numThreads, SchedulingMode mode) {
         // TODO
+        if (mode == null) {
+            throw new IllegalArgumentException("scheduling mode must not be null");
+        }
+        this.mode = mode;
         // creating workers
         this.workers = new TiredThread[numThreads];
+        this.accountedFatigue = new double[numThreads];
+        this.liveWorkers = new AtomicInteger(numThreads);
         for (int i = 0; i < numThreads; i++) {
             double fatigueFactor = 0.5 + (Math.random());
-            TiredThread worker = new TiredThread(i, fatigueFactor);
-            this.workers[i] = worker;
+            this.workers[i] = new TiredThread(i, fatigueFactor);
+        }
+        // same as averageFatigue(), without handing the half-built executor to the workers
+        DoubleAdder total = totalFatigue;
+        DoubleSupplier average = () -> numThreads == 0 ? 0 : total.sum() / numThreads;
+        for (TiredThread worker : workers) {
+            if (mode == SchedulingMode.WORK_STEALING) {
+                worker.enableWorkStealing(workers, average);
+            }
+            worker.setIdleListener(this::onIdle);
+            if (mode == SchedulingMode.HANDOFF) {
+                idle.add(worker);
+                idleCount.incrementAndGet();
+            }
             worker.start();
-            idleMinHeap.add(worker);
         }
     }
 
+    public SchedulingMode getMode() {
+        return mode;
+    }
+
+    double averageFatigue() {
+        return workers.length == 0 ? 0 : totalFatigue.sum() / workers.length;
+    }
+
     public void submit(Runnable task) {
         // TODO
+        Runnable tracked = new Batch(1).track(task);
+        if (mode == SchedulingMode.WORK_STEALING) {
+            // no waiting for an idle worker: the least tired one queues it, the others may steal it
+            leastFatigued().pushTasks(List.of(tracked));
+            return;
+        }
         try {
-            TiredThread selectedWorker = null;
-
-            synchronized (this) {
-                while (true) {
-                    if (workers.length < 2) {
-                        while (idleMinHeap.isEmpty()) {
-                            this.wait();
-                        }
-                        selectedWorker = idleMinHeap.poll();
-                        break;
-                    }
-
-                    if (idleMinHeap.size() == workers.length) {
-                        selectedWorker = idleMinHeap.poll();
-                        break;
-                    }
+            TiredThread selectedWorker = claimWorker();
+            // the worker goes back to the idle set by itself, once its time is accounted (see onIdle)
+            selectedWorker.newTask(tracked);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                    double totalFatigue = 0;
-                    for (TiredThread w : workers) {
-                        totalFatigue += w.getFatigue();
+    // takes the least tired idle worker, parking until one may be picked
+    private TiredThread claimWorker() throws InterruptedException {
+        Thread me = Thread.currentThread();
+        boolean waiting = false;
+        try {
+            while (true) {
+                TiredThread worker = tryClaim();
+                if (worker != null) {
+                    if (waiting) {
+                        // leave the line first, or the signal below would only reach this thread
+                        waiters.remove(me);
+                        waiting = false;
                     }
-                    double averageFatigue = totalFatigue / workers.length;
-                    TiredThread bestAvailable = idleMinHeap.peek();
-
-                    if (bestAvailable == null) {
-                        this.wait();
-                    } else if (bestAvailable.getFatigue() > averageFatigue) {
-                        this.wait();
-                    } else {
-                        selectedWorker = idleMinHeap.poll();
-                        break;
+                    if (!idle.isEmpty()) {
+                        signalWaiter(); // there may be more for the next submitter
                     }
+                    return worker;
+                }
+                if (!waiting) {
+                    // queue up first and look once more, so a worker going idle meanwhile is not missed
+                    waiters.add(me);
+                    waiting = true;
+                    continue;
                 }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (waiting) {
+                waiters.remove(me);
             }
+        }
+    }
+
+    // a worker is only picked if it is not more tired than average, unless everyone is idle
+    private TiredThread tryClaim() {
+        while (true) {
+            TiredThread best;
+            try {
+                best = idle.first();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+            boolean allowed = workers.length < 2
+                    || idleCount.get() >= liveWorkers.get()
+                    || best.getFatigue() <= averageFatigue();
+            if (!allowed) {
+                best.getMetrics().recordSkip();
+                return null;
+            }
+            if (idle.remove(best)) {
+                idleCount.decrementAndGet();
+                return best;
+            }
+            // another submitter took it, look again
+        }
+    }
 
-            inFlight.incrementAndGet();
-            final TiredThread finalWorker = selectedWorker;
+    // runs on the worker's thread after every task
+    private void onIdle(TiredThread worker) {
+        double fatigue = worker.getFatigue();
+        int id = worker.getWorkerId();
+        totalFatigue.add(fatigue - accountedFatigue[id]);
+        accountedFatigue[id] = fatigue;
+        if (worker.isExiting()) {
+            workerStopped();
+        } else if (mode == SchedulingMode.HANDOFF) {
+            release(worker);
+            drainBacklog();
+        }
+    }
 
-            Runnable wrapper = () -> {
-                try {
-                    task.run();
-                } finally {
-                    inFlight.decrementAndGet();
-                    synchronized (this) {
-                        idleMinHeap.add(finalWorker);
-                        this.notifyAll(); 
-                    }
-                }
-            };
+    // a worker stopped on an Error and is never handed work again. the others may now all be idle,
+    // which lifts the fatigue rule; with none left, the tasks still waiting fail instead of hanging
+    private void workerStopped() {
+        if (liveWorkers.decrementAndGet() > 0) {
+            if (mode == SchedulingMode.HANDOFF) {
+                drainBacklog();
+                signalWaiter();
+            }
+            return;
+        }
+        IllegalStateException cause = new IllegalStateException("no workers left to run the task");
+        List<Runnable> orphans = new ArrayList<>();
+        Runnable task;
+        while ((task = backlog.poll()) != null) {
+            orphans.add(task);
+        }
+        for (TiredThread w : workers) {
+            orphans.addAll(w.drainQueued());
+        }
+        for (Runnable orphan : orphans) {
+            ((QueuedTask) orphan).cancel(cause);
+        }
+    }
 
-            selectedWorker.newTask(wrapper);
+    private void release(TiredThread worker) {
+        if (idle.add(worker)) {
+            idleCount.incrementAndGet();
+            signalWaiter();
+        }
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // hands backlogged tasks to idle workers for as long as the fatigue rule lets it pick one.
+    // called after every change that may make it succeed: a task enters the backlog, a worker goes idle
+    private void drainBacklog() {
+        while (!backlog.isEmpty()) {
+            TiredThread worker = tryClaim();
+            if (worker == null) {
+                return; // a busy worker drains the rest when it finishes
+            }
+            Runnable task = backlog.poll();
+            if (task == null) {
+                release(worker);
+                return;
+            }
+            worker.newTask(task);
+        }
+    }
+
+    // submitters parked in claimWorker, for tests
+    int waitingSubmitters() {
+        return waiters.size();
+    }
+
+    // wakes only the submitter at the head of the line
+    private void signalWaiter() {
+        Thread waiter = waiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
         }
     }
 
     public void submitAll(Iterable<Runnable> tasks) {
         // TODO: submit tasks one by one and wait until all finish
+        CompletableFuture<Void> done = submitAllAsync(tasks);
+        // waiting for all tasks to finish
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // failed tasks were already reported by their workers, but an Error is not swallowed
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Submits the tasks without waiting for a worker, or for the tasks to finish.
+     * The returned future completes once every one of these tasks has run, and completes
+     * exceptionally with the first exception one of them threw.
+     */
+    public CompletableFuture<Void> submitAllAsync(Iterable<Runnable> tasks) {
+        List<Runnable> list = new ArrayList<>();
         for (Runnable task : tasks) {
-            submit(task);
+            list.add(task);
         }
-        // waiting for all tasks to finish
-        synchronized (this) {
-            while (inFlight.get() > 0) {
-                try {
-                    this.wait();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+        Batch batch = new Batch(list.size());
+        if (list.isEmpty()) {
+            return batch.done;
+        }
+        if (liveWorkers.get() == 0) {
+            throw new IllegalStateException("no workers to run the task");
+        }
+        List<Runnable> tracked = new ArrayList<>(list.size());
+        for (Runnable task : list) {
+            tracked.add(batch.track(task));
+        }
+        if (mode == SchedulingMode.WORK_STEALING) {
+            pushBatches(tracked);
+        } else {
+            backlog.addAll(tracked);
+            drainBacklog();
+        }
+        return batch.done;
+    }
+
+    private TiredThread leastFatigued() {
+        if (workers.length == 0) {
+            throw new IllegalStateException("no workers to run the task");
+        }
+        TiredThread best = workers[0];
+        for (TiredThread w : workers) {
+            if (w.getFatigue() < best.getFatigue()) {
+                best = w;
+            }
+        }
+        return best;
+    }
+
+    // splits the tasks into one contiguous batch per worker, the least tired workers get the first ones
+    private void pushBatches(List<Runnable> tracked) {
+        int n = workers.length;
+        // running workers keep getting more tired, so sort on one reading of every fatigue
+        double[] fatigue = new double[n];
+        Integer[] byFatigue = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            fatigue[i] = workers[i].getFatigue();
+            byFatigue[i] = i;
+        }
+        Arrays.sort(byFatigue, Comparator.comparingDouble(i -> fatigue[i]));
+        for (int i = 0; i < n; i++) {
+            TiredThread worker = workers[byFatigue[i]];
+            int from = (int) ((long) tracked.size() * i / n);
+            int to = (int) ((long) tracked.size() * (i + 1) / n);
+            if (from < to) {
+                worker.pushTasks(tracked.subList(from, to));
+            } else {
+                // no batch of its own, but it can still steal
+                worker.wakeUp();
+            }
+        }
+    }
+
+    /**
+     * Live metrics of every worker, in worker order. Reading them never blocks dispatch.
+     */
+    public List<WorkerMetrics> getWorkerMetrics() {
+        List<WorkerMetrics> metrics = new ArrayList<>(workers.length);
+        for (TiredThread worker : workers) {
+            metrics.add(worker.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers every worker's metrics with the platform MBean server as
+     * scheduling:type=TiredExecutor,name=poolName,worker=id. They are unregistered on shutdown.
+     */
+    public void registerMBeans(String poolName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (TiredThread worker : workers) {
+            ObjectName name = new ObjectName("scheduling:type=TiredExecutor,name=" + ObjectName.quote(poolName)
+                    + ",worker=" + worker.getWorkerId());
+            server.registerMBean(worker.getMetrics(), name);
+            mbeanNames.add(name);
+        }
+    }
+
+    private void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : mbeanNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
             }
         }
+        mbeanNames.clear();
     }
 
     public void shutdown() throws InterruptedException {
         // TODO
+        unregisterMBeans();
         for (TiredThread worker : workers) {
             worker.shutdown();
         }
@@ -110,13 +404,16 @@ public class TiredExecutor {
         }
     }
 
-    public synchronized String getWorkerReport() {
+    public String getWorkerReport() {
         // TODO: return readable statistics for each worker
-        String report = "Worker Report:\n";
+        // every value is read from the workers' own counters, no lock is held
+        StringBuilder report = new StringBuilder("Worker Report:\n");
         for (TiredThread worker : this.workers) {
-            report = report + "Worker " + worker.getWorkerId() + " Used: " + worker.getTimeUsed() + " Idle: " + 
-                     worker.getTimeIdle() + " Fatigue: " + worker.getFatigue() + "\n";
+            report.append("Worker ").append(worker.getWorkerId())
+                  .append(" Used: ").append(worker.getTimeUsed())
+                  .append(" Idle: ").append(worker.getTimeIdle())
+                  .append(" Fatigue: ").append(worker.getFatigue()).append("\n");
         }
-        return report;
+        return report.toString();
     }
 }
@@ -1,9 +1,17 @@
 package scheduling;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
@@ -18,10 +26,20 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
+    private volatile boolean exiting = false; // Set when a task threw an Error, the worker stops after that task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
+    private volatile Consumer<TiredThread> idleListener = null; // Told after every task, once its time is accounted
+    private final AtomicReference<WorkerMetrics> metrics = new AtomicReference<>(); // Created on first use, after construction
+
+    // Work-stealing mode only: own tasks are taken from the head, thieves take from the tail
+    private volatile TiredThread[] group = null; // All workers of the pool, null in handoff mode
+    private volatile DoubleSupplier averageFatigue = null; // Average fatigue of the group
+    private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger queued = new AtomicInteger(0); // Approximate deque size, a hint for thieves
+    private volatile boolean parked = false; // Set while the worker is about to sleep, until it is woken
 
     public TiredThread(int id, double fatigueFactor) {
         this.id = id;
@@ -50,6 +68,89 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    public long getStolenTasks() {
+        return getMetrics().getStolenTasks();
+    }
+
+    public WorkerMetrics getMetrics() {
+        WorkerMetrics current = metrics.get();
+        if (current == null) {
+            metrics.compareAndSet(null, new WorkerMetrics(this));
+            current = metrics.get();
+        }
+        return current;
+    }
+
+    public int getQueuedTasks() {
+        return queued.get();
+    }
+
+    /**
+     * True once a task has thrown an Error: the worker stops after it and takes no more work.
+     */
+    boolean isExiting() {
+        return exiting;
+    }
+
+    /**
+     * Work-stealing mode: removes and returns every task still in this worker's deque.
+     */
+    List<Runnable> drainQueued() {
+        List<Runnable> tasks = new ArrayList<>();
+        Runnable task;
+        while ((task = deque.pollFirst()) != null) {
+            queued.decrementAndGet();
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Switches the worker to work-stealing mode: it takes tasks from its own deque and from
+     * the deques of the rest of the group instead of the handoff slot. Must be called before start().
+     */
+    void enableWorkStealing(TiredThread[] group, DoubleSupplier averageFatigue) {
+        if (getState() != State.NEW) {
+            throw new IllegalStateException("Thread #" + id + " is already running.");
+        }
+        this.group = group;
+        this.averageFatigue = averageFatigue;
+    }
+
+    /**
+     * Registers a callback that runs on this worker's thread after every task, once the
+     * task's time is added to the fatigue. Must be called before start().
+     */
+    void setIdleListener(Consumer<TiredThread> listener) {
+        if (getState() != State.NEW) {
+            throw new IllegalStateException("Thread #" + id + " is already running.");
+        }
+        this.idleListener = listener;
+    }
+
+    /**
+     * Work-stealing mode: appends a batch to this worker's deque and wakes it up.
+     * When it leaves work this worker cannot start right away (more than one task, a busy
+     * worker or one that has stopped), a sleeping worker of the group is woken as well to steal it.
+     */
+    void pushTasks(List<Runnable> batch) {
+        deque.addAll(batch);
+        queued.addAndGet(batch.size());
+        LockSupport.unpark(this);
+        if (batch.size() > 1 || busy.get() || exiting) {
+            wakeParkedSibling();
+        }
+    }
+
+    /**
+     * Work-stealing mode: wakes the worker if it is sleeping, so it can look for work to steal.
+     */
+    void wakeUp() {
+        if (parked) {
+            LockSupport.unpark(this);
+        }
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
@@ -57,6 +158,13 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
      */
     public void newTask(Runnable task) {
        // TODO
+        if (group != null) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+            pushTasks(List.of(task));
+            return;
+        }
        // Inserts element into this queue immediately if possible. returns true upon success and false if no space is currently available.
         if (!handoff.offer(task)) {
             throw new IllegalStateException("Thread #" + id + " is occupied.");
@@ -69,6 +177,12 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
      */
     public void shutdown() {
        // TODO
+        if (group != null) {
+            // the worker drains its own deque, then exits
+            alive.set(false);
+            LockSupport.unpark(this);
+            return;
+        }
         try {
             //Inserts the specified element into this queue, waiting if necessary for space to become available.
             handoff.put(POISON_PILL);
@@ -80,6 +194,10 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     @Override
     public void run() {
        // TODO
+        if (group != null) {
+            runWorkStealing();
+            return;
+        }
         while (alive.get()) {
             try {
                 Runnable task = handoff.take();
@@ -89,18 +207,7 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
                     alive.set(false);
                     break;
                 }
-                busy.set(true);
-                
-                long workStartTime = System.nanoTime();
-                try {
-                    task.run();
-                } catch (RuntimeException e) {
-                    System.err.println("Thread #" + id + " error: " + e.getMessage());
-                } finally {
-                    timeUsed.addAndGet(System.nanoTime() - workStartTime);
-                    busy.set(false);
-                    idleStartTime.set(System.nanoTime()); 
-                }
+                runTask(task);
 
             } catch (InterruptedException e) {
                 alive.set(false);
@@ -109,6 +216,130 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }
     }
 
+    private void runTask(Runnable task) {
+        busy.set(true);
+        WorkerMetrics workerMetrics = getMetrics(); // before the clock starts, the first call creates it
+
+        long workStartTime = System.nanoTime();
+        if (task instanceof QueuedTask queued) {
+            workerMetrics.recordQueueWait(workStartTime - queued.submittedAt);
+        }
+        boolean failed = false;
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            failed = true;
+            System.err.println("Thread #" + id + " error: " + e.getMessage());
+        } catch (Error e) {
+            // the JVM may be in trouble, so the worker stops rather than take more work
+            failed = true;
+            exiting = true;
+            alive.set(false);
+            System.err.println("Thread #" + id + " stopped: " + e);
+            throw e;
+        } finally {
+            long workEndTime = System.nanoTime();
+            timeUsed.addAndGet(workEndTime - workStartTime);
+            workerMetrics.recordTask(workEndTime - workStartTime, failed, workEndTime);
+            busy.set(false);
+            idleStartTime.set(System.nanoTime());
+            Consumer<TiredThread> listener = idleListener;
+            if (listener != null) {
+                listener.accept(this);
+            }
+        }
+    }
+
+    private void runWorkStealing() {
+        while (true) {
+            Runnable task = deque.pollFirst();
+            if (task != null) {
+                queued.decrementAndGet();
+                if (!deque.isEmpty()) {
+                    wakeParkedSibling(); // more work than this worker can start now
+                }
+            } else if (alive.get()) {
+                task = steal();
+            }
+            if (task != null) {
+                timeIdle.getAndAdd(System.nanoTime() - idleStartTime.get());
+                runTask(task);
+                continue;
+            }
+            if (!alive.get()) {
+                // a task pushed just before shutdown may have missed the first look
+                if (deque.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            // announce the nap before the last look, so a push either sees the flag or is seen here.
+            // no timeout: pushes wake the owner, and whoever takes a task with more left behind
+            // wakes one sleeping sibling, so the wake-ups spread as far as there is work
+            parked = true;
+            if (deque.isEmpty() && !workLeftInGroup()) {
+                LockSupport.park(this);
+            }
+            parked = false;
+            if (Thread.interrupted()) {
+                alive.set(false);
+            }
+        }
+    }
+
+    // takes a task from the tail of the fullest deque in the group
+    private Runnable steal() {
+        TiredThread[] workers = group;
+        // fatigue is a hint: workers more tired than average let the fresher ones pick first
+        if (getFatigue() > averageFatigue.getAsDouble()) {
+            getMetrics().recordSkip();
+            Thread.yield();
+        }
+        for (int attempt = 0; attempt < workers.length; attempt++) {
+            TiredThread victim = null;
+            int most = 0;
+            for (TiredThread w : workers) {
+                int size = w.queued.get();
+                if (w != this && size > most) {
+                    most = size;
+                    victim = w;
+                }
+            }
+            if (victim == null) {
+                return null;
+            }
+            Runnable task = victim.deque.pollLast();
+            if (task != null) {
+                victim.queued.decrementAndGet();
+                getMetrics().recordSteal();
+                if (!victim.deque.isEmpty()) {
+                    wakeParkedSibling();
+                }
+                return task;
+            }
+        }
+        return null;
+    }
+
+    // wakes one sleeping worker of the group other than this one, if there is any
+    private void wakeParkedSibling() {
+        for (TiredThread w : group) {
+            if (w != this && w.parked) {
+                LockSupport.unpark(w);
+                return;
+            }
+        }
+    }
+
+    private boolean workLeftInGroup() {
+        for (TiredThread w : group) {
+            if (!w.deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public int compareTo(TiredThread o) {
         // TODO
@@ -0,0 +1,157 @@
+package scheduling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live counters of one TiredThread. The worker records into them as it goes, without locks
+ * or allocation, and any thread may read them at any time without holding up dispatch.
+ * Queue wait is the time from submission until the task starts running.
+ * A skip is a time the worker was passed over for being more tired than average.
+ * Fatigue is sampled after tasks, at most once per FATIGUE_SAMPLE_NANOS, into a ring of the
+ * last FATIGUE_SAMPLES samples.
+ */
+public class WorkerMetrics implements WorkerMetricsMBean {
+
+    static final int FATIGUE_SAMPLES = 256;
+    static final long FATIGUE_SAMPLE_NANOS = 1_000_000;
+
+    private final TiredThread worker;
+    private final AtomicLong tasks = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong stolen = new AtomicLong(0);
+    private final AtomicLong skips = new AtomicLong(0);
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+
+    // fatigue ring, written only by the worker: sample k is at k % FATIGUE_SAMPLES
+    private final AtomicLongArray sampleTimes = new AtomicLongArray(FATIGUE_SAMPLES);
+    private final AtomicLongArray sampleFatigue = new AtomicLongArray(FATIGUE_SAMPLES); // as double bits
+    private final AtomicLong samples = new AtomicLong(0);
+    private long lastSampleTime = 0;
+
+    WorkerMetrics(TiredThread worker) {
+        this.worker = worker;
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    // called by the worker after every task
+    void recordTask(long runNanos, boolean failedTask, long now) {
+        tasks.incrementAndGet();
+        if (failedTask) {
+            failed.incrementAndGet();
+        }
+        runTime.record(runNanos);
+        if (samples.get() == 0 || now - lastSampleTime >= FATIGUE_SAMPLE_NANOS) {
+            lastSampleTime = now;
+            int slot = (int) (samples.get() % FATIGUE_SAMPLES);
+            sampleTimes.set(slot, now);
+            sampleFatigue.set(slot, Double.doubleToRawLongBits(worker.getFatigue()));
+            samples.incrementAndGet();
+        }
+    }
+
+    void recordSteal() {
+        stolen.incrementAndGet();
+    }
+
+    void recordSkip() {
+        skips.incrementAndGet();
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getRunTime() {
+        return runTime;
+    }
+
+    /**
+     * The recent fatigue samples, oldest first, as {System.nanoTime(), fatigue} pairs.
+     */
+    public double[][] getFatigueHistory() {
+        long end = samples.get();
+        long start = Math.max(0, end - FATIGUE_SAMPLES);
+        double[][] history = new double[(int) (end - start)][];
+        for (long k = start; k < end; k++) {
+            int slot = (int) (k % FATIGUE_SAMPLES);
+            history[(int) (k - start)] = new double[]{
+                    sampleTimes.get(slot), Double.longBitsToDouble(sampleFatigue.get(slot))};
+        }
+        return history;
+    }
+
+    @Override
+    public int getWorkerId() {
+        return worker.getWorkerId();
+    }
+
+    @Override
+    public long getTaskCount() {
+        return tasks.get();
+    }
+
+    @Override
+    public long getFailedTasks() {
+        return failed.get();
+    }
+
+    @Override
+    public long getStolenTasks() {
+        return stolen.get();
+    }
+
+    @Override
+    public long getSkipCount() {
+        return skips.get();
+    }
+
+    @Override
+    public double getFatigue() {
+        return worker.getFatigue();
+    }
+
+    @Override
+    public long getTimeUsed() {
+        return worker.getTimeUsed();
+    }
+
+    @Override
+    public long getTimeIdle() {
+        return worker.getTimeIdle();
+    }
+
+    @Override
+    public long getQueueWaitP50() {
+        return queueWait.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getQueueWaitP99() {
+        return queueWait.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getQueueWaitMax() {
+        return queueWait.getMax();
+    }
+
+    @Override
+    public long getRunTimeP50() {
+        return runTime.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getRunTimeP99() {
+        return runTime.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRunTimeMax() {
+        return runTime.getMax();
+    }
+}
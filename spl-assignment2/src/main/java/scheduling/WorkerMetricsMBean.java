@@ -0,0 +1,35 @@
+package scheduling;
+
+/**
+ * The JMX view of one worker's WorkerMetrics, see TiredExecutor.registerMBeans.
+ */
+public interface WorkerMetricsMBean {
+
+    int getWorkerId();
+
+    long getTaskCount();
+
+    long getFailedTasks();
+
+    long getStolenTasks();
+
+    long getSkipCount();
+
+    double getFatigue();
+
+    long getTimeUsed();
+
+    long getTimeIdle();
+
+    long getQueueWaitP50();
+
+    long getQueueWaitP99();
+
+    long getQueueWaitMax();
+
+    long getRunTimeP50();
+
+    long getRunTimeP99();
+
+    long getRunTimeMax();
+}
@@ -0,0 +1,126 @@
+package spl.lae;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+import parser.ChainPlan;
+
+/**
+ * The NodeMetrics of one engine run, in the order the nodes were resolved, and the
+ * multiplication orders chosen for the run's tree.
+ * Nodes may be added from several threads, by concurrent loadAndCompute calls, and the
+ * getters return a copy of what has been added so far.
+ */
+public class EngineMetrics {
+
+    private final Queue<NodeMetrics> nodes = new ConcurrentLinkedQueue<>();
+    private final Queue<ChainPlan> chainPlans = new ConcurrentLinkedQueue<>();
+
+    void add(NodeMetrics node) {
+        nodes.add(node);
+    }
+
+    void addChainPlans(List<ChainPlan> plans) {
+        chainPlans.addAll(plans);
+    }
+
+    public List<NodeMetrics> getNodes() {
+        return Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    public List<ChainPlan> getChainPlans() {
+        return Collections.unmodifiableList(new ArrayList<>(chainPlans));
+    }
+
+    public long getTotalFlops() {
+        long total = 0;
+        for (NodeMetrics node : nodes) {
+            total += node.getFlops();
+        }
+        return total;
+    }
+
+    public long getTotalComputeNanos() {
+        long total = 0;
+        for (NodeMetrics node : nodes) {
+            total += node.getComputeNanos();
+        }
+        return total;
+    }
+
+    // the node with the longest load + compute + readback time, null if there are none
+    public NodeMetrics getSlowest() {
+        NodeMetrics slowest = null;
+        for (NodeMetrics node : nodes) {
+            if (slowest == null || node.getTotalNanos() > slowest.getTotalNanos()) {
+                slowest = node;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Writes the metrics as JSON: {"totalFlops", "totalComputeNanos", "nodes": [...], "chainPlans": [...]}.
+     */
+    public void write(Path path) throws IOException {
+        OutputStream sink = new BufferedOutputStream(Files.newOutputStream(path));
+        try (JsonGenerator generator = new JsonFactory().createGenerator(sink, JsonEncoding.UTF8)) {
+            generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            generator.writeStartObject();
+            generator.writeNumberField("totalFlops", getTotalFlops());
+            generator.writeNumberField("totalComputeNanos", getTotalComputeNanos());
+            generator.writeArrayFieldStart("nodes");
+            for (NodeMetrics node : nodes) {
+                generator.writeStartObject();
+                generator.writeStringField("operator", node.getOperator().name());
+                generator.writeBooleanField("fused", node.isFused());
+                generator.writeArrayFieldStart("operands");
+                for (int[] shape : node.getOperandShapes()) {
+                    writeShape(generator, shape);
+                }
+                generator.writeEndArray();
+                generator.writeFieldName("result");
+                writeShape(generator, node.getResultShape());
+                generator.writeNumberField("tasks", node.getTaskCount());
+                generator.writeNumberField("loadNanos", node.getLoadNanos());
+                generator.writeNumberField("computeNanos", node.getComputeNanos());
+                generator.writeNumberField("readbackNanos", node.getReadbackNanos());
+                generator.writeNumberField("flops", node.getFlops());
+                generator.writeNumberField("gflops", node.getGflops());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("chainPlans");
+            for (ChainPlan plan : chainPlans) {
+                generator.writeStartObject();
+                generator.writeStringField("order", plan.getOrder());
+                generator.writeNumberField("flops", plan.getOptimalFlops());
+                generator.writeNumberField("leftToRightFlops", plan.getLeftToRightFlops());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeShape(JsonGenerator generator, int[] shape) throws IOException {
+        if (shape == null) {
+            generator.writeNull();
+        } else {
+            generator.writeArray(shape, 0, shape.length);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package spl.lae;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import parser.BinaryMatrixFormat;
+import parser.ChainPlan;
+import parser.ComputationNode;
+import parser.OutputWriter;
+
+/**
+ * Keeps one LinearAlgebraEngine, and with it one set of warm workers, alive across many jobs.
+ * A job is an input file and an output file, the same pair Main takes. Jobs come in through
+ * submit, a spool directory (see serveDirectory) or a Unix-domain socket (see serveSocket), and
+ * up to maxJobs of them are evaluated at once. Every job is parsed into its own tree and run
+ * with its own node contexts and metrics, so concurrent jobs share nothing but the workers.
+ */
+public class EngineServer implements AutoCloseable {
+
+    // subdirectories of a spool directory
+    static final String IN_DIR = "in";
+    static final String OUT_DIR = "out";
+    static final String DONE_DIR = "done";
+
+    private final LinearAlgebraEngine engine;
+    private final OutputWriter.Format format;
+    private final boolean writeMetrics;
+    private final ExecutorService jobs;
+    private final Set<Path> spooled = ConcurrentHashMap.newKeySet(); // spool inputs picked up and not done yet
+    private final List<Closeable> listeners = new CopyOnWriteArrayList<>(); // watch services and server sockets
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final AtomicLong failedJobs = new AtomicLong();
+    private volatile boolean open = true;
+
+    public EngineServer(LinearAlgebraEngine engine, int maxJobs, OutputWriter.Format format, boolean writeMetrics) {
+        if (engine == null || format == null) {
+            throw new IllegalArgumentException("engine and format must not be null");
+        }
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("maxJobs must be positive");
+        }
+        this.engine = engine;
+        this.format = format;
+        this.writeMetrics = writeMetrics;
+        AtomicInteger jobThreads = new AtomicInteger();
+        // these threads only parse, wait for the engine and write, the computing is done by the workers
+        this.jobs = Executors.newFixedThreadPool(maxJobs, job -> {
+            Thread thread = new Thread(job, "lae-job-" + jobThreads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Evaluates the expression in inputPath and writes the result to outputPath, as Main does.
+     * When the job fails its error is written to outputPath instead, and the future fails with it.
+     */
+    public CompletableFuture<Void> submit(String inputPath, String outputPath) {
+        return submit(inputPath, outputPath, outputPath + Main.METRICS_SUFFIX);
+    }
+
+    private CompletableFuture<Void> submit(String inputPath, String outputPath, String metricsPath) {
+        if (!open) {
+            throw new IllegalStateException("the server is closed");
+        }
+        return CompletableFuture.runAsync(() -> runJob(inputPath, outputPath, metricsPath), jobs);
+    }
+
+    private void runJob(String inputPath, String outputPath, String metricsPath) {
+        EngineMetrics metrics = new EngineMetrics();
+        try {
+            // the chosen multiply orders go to the job's metrics, not to the shared stdout
+            List<ChainPlan> chainPlans = new ArrayList<>();
+            ComputationNode root = Main.prepare(inputPath, chainPlans);
+            metrics.addChainPlans(chainPlans);
+            engine.run(root, metrics);
+            OutputWriter.write(root.getMatrix(), outputPath, format);
+            if (writeMetrics) {
+                metrics.write(Paths.get(metricsPath));
+            }
+            completedJobs.incrementAndGet();
+        } catch (Exception e) {
+            failedJobs.incrementAndGet();
+            try {
+                OutputWriter.write(e.getMessage(), outputPath, format);
+            } catch (IOException ioException) {
+                e.addSuppressed(ioException);
+            }
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Starts watching spool/in, creating spool/in, spool/out and spool/done as needed.
+     * Every .json or .laeb file that appears in spool/in, or is already there, is evaluated into
+     * spool/out/name.json (name.laeb for binary output) and then moved to spool/done. Results
+     * are renamed into place once complete, so a client only has to wait for the file to exist.
+     * Inputs should be moved into spool/in the same way, since they are read as soon as they
+     * appear. File references are resolved from spool/in, so referenced matrices belong outside it.
+     */
+    public void serveDirectory(Path spool) throws IOException {
+        Path in = Files.createDirectories(spool.resolve(IN_DIR));
+        Files.createDirectories(spool.resolve(OUT_DIR));
+        Files.createDirectories(spool.resolve(DONE_DIR));
+        WatchService watcher = in.getFileSystem().newWatchService();
+        in.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+        listeners.add(watcher);
+        startListener("lae-spool", () -> watchSpool(spool, watcher));
+    }
+
+    private void watchSpool(Path spool, WatchService watcher) {
+        try {
+            // registered before this first scan, so nothing created in between is missed
+            scanSpool(spool);
+            while (open) {
+                WatchKey key = watcher.take();
+                // rescanning instead of reading the events also covers overflowed event queues
+                key.pollEvents();
+                scanSpool(spool);
+                if (!key.reset()) {
+                    System.err.println("spool directory is gone: " + spool.resolve(IN_DIR));
+                    return;
+                }
+            }
+        } catch (InterruptedException | IllegalStateException | RejectedExecutionException e) {
+            // closed, a closed watch service throws ClosedWatchServiceException, an IllegalStateException
+        } catch (IOException e) {
+            if (open) {
+                System.err.println("failed to read the spool directory: " + e.getMessage());
+            }
+        }
+    }
+
+    private void scanSpool(Path spool) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spool.resolve(IN_DIR))) {
+            for (Path input : files) {
+                String name = input.getFileName().toString();
+                if (isJobFile(name) && Files.isRegularFile(input) && spooled.add(input)) {
+                    submitSpooled(spool, input, name);
+                }
+            }
+        }
+    }
+
+    static boolean isJobFile(String name) {
+        return !name.startsWith(".") && (name.endsWith(".json") || name.endsWith(BinaryMatrixFormat.EXTENSION));
+    }
+
+    private void submitSpooled(Path spool, Path input, String name) {
+        String stem = name.substring(0, name.lastIndexOf('.'));
+        Path out = spool.resolve(OUT_DIR);
+        Path output = out.resolve(stem + (format == OutputWriter.Format.BINARY ? BinaryMatrixFormat.EXTENSION : ".json"));
+        Path staging = out.resolve("." + output.getFileName() + ".tmp");
+        submit(input.toString(), staging.toString(), output + Main.METRICS_SUFFIX).whenComplete((ignored, failure) -> {
+            try {
+                // the error, if there was one, is in the staged file as well
+                Files.move(staging, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(input, spool.resolve(DONE_DIR).resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("failed to finish spool job " + name + ": " + e.getMessage());
+            } finally {
+                spooled.remove(input);
+            }
+        });
+    }
+
+    /**
+     * Listens on a Unix-domain socket at socketPath, removed again when the server closes.
+     * A client can have the server read and overwrite any file the server's user can, so the
+     * socket's directory is created readable by its owner only, and an existing directory
+     * that anyone else may enter is refused.
+     * Every line a client sends is a request, answered with one line:
+     * "input_file TAB output_file" runs a job and answers "OK output_file" or "ERROR message",
+     * and "SHUTDOWN" answers "OK" and closes the server. Paths without spaces may be separated
+     * by spaces instead. A connection's jobs run one after the other, separate connections
+     * run concurrently.
+     */
+    public void serveSocket(Path socketPath) throws IOException {
+        Path socketFile = socketPath.toAbsolutePath();
+        ownerOnlyDirectory(socketFile.getParent());
+        ServerSocketChannel socket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            socket.bind(UnixDomainSocketAddress.of(socketFile));
+        } catch (IOException e) {
+            socket.close();
+            throw new IOException("failed to bind " + socketFile + ": " + e.getMessage(), e);
+        }
+        listeners.add(() -> {
+            socket.close();
+            Files.deleteIfExists(socketFile);
+        });
+        startListener("lae-socket", () -> acceptClients(socket));
+    }
+
+    // creates dir accessible by its owner only, or checks that an existing one is
+    private static void ownerOnlyDirectory(Path dir) throws IOException {
+        boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(dir)) {
+            if (posix) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE)));
+            } else {
+                Files.createDirectories(dir);
+            }
+            return;
+        }
+        if (posix) {
+            Set<PosixFilePermission> permissions = Files.getFileAttributeView(dir, PosixFileAttributeView.class)
+                    .readAttributes().permissions();
+            for (PosixFilePermission permission : permissions) {
+                if (!permission.name().startsWith("OWNER_")) {
+                    throw new IOException("the socket directory " + dir + " must only be accessible by its owner, but is "
+                            + PosixFilePermissions.toString(permissions));
+                }
+            }
+        }
+    }
+
+    private void acceptClients(ServerSocketChannel socket) {
+        while (open) {
+            try {
+                SocketChannel client = socket.accept();
+                clients.add(client);
+                Thread.ofVirtual().name("lae-client").start(() -> serveClient(client));
+            } catch (IOException e) {
+                if (!socket.isOpen()) {
+                    return;
+                }
+                System.err.println("failed to accept a client: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serveClient(SocketChannel client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String request = line.strip();
+                if (request.isEmpty()) {
+                    continue;
+                }
+                if (request.equals("SHUTDOWN")) {
+                    writer.println("OK");
+                    close();
+                    return;
+                }
+                writer.println(answer(request));
+            }
+        } catch (IOException e) {
+            // the client went away, or the server closed the connection
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private String answer(String request) {
+        String[] paths = request.indexOf('\t') >= 0 ? request.split("\t") : request.split(" +");
+        if (paths.length != 2) {
+            return "ERROR expected: input_file TAB output_file";
+        }
+        try {
+            submit(paths[0], paths[1]).join();
+            return "OK " + paths[1];
+        } catch (CompletionException e) {
+            return "ERROR " + String.valueOf(e.getCause().getMessage()).replace('\n', ' ');
+        } catch (IllegalStateException | RejectedExecutionException e) {
+            return "ERROR the server is closed";
+        }
+    }
+
+    private void startListener(String name, Runnable listener) {
+        Thread thread = new Thread(listener, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    public long getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    /**
+     * Blocks until the server is closed.
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    /**
+     * Stops taking jobs and waits for the ones already taken to finish.
+     * The engine is not shut down, it belongs to the caller.
+     */
+    @Override
+    public void close() {
+        boolean first;
+        synchronized (this) {
+            first = open;
+            open = false;
+        }
+        if (!first) {
+            // someone else is closing, return once they are done
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        for (Closeable listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        jobs.shutdown();
+        try {
+            jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the jobs are done, drop the connections still open
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        closed.countDown();
+    }
+}
@@ -0,0 +1,236 @@
+package spl.lae;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.RangeTask;
+
+/**
+ * One pass over a whole region of ADD, NEGATE and TRANSPOSE nodes.
+ * Transposes are pushed down onto the operands, and the additions and negations are replayed
+ * block by block in their original order on a few row buffers. The result is bit-identical to
+ * computing the nodes one at a time, but every output element is written once and no
+ * intermediate matrix is ever built. Transposed operands, including transposed views of
+ * resolved nodes, are read along their own rows a block at a time.
+ */
+class FusedElementwise {
+
+    private static final int ADD = -1; // program ops, any other value pushes that operand
+    private static final int NEGATE = -2;
+    // output rows per task: a transposed operand is read ROW_BLOCK doubles (one cache line) at a time
+    static final int ROW_BLOCK = 8;
+
+    private final List<double[][]> operands = new ArrayList<>();
+    private final List<Boolean> negated = new ArrayList<>();
+    private final List<Boolean> transposed = new ArrayList<>();
+    private final List<Integer> program = new ArrayList<>(); // operand pushes, additions and negations in post-order
+    private int maxDepth = 0;
+    private int rows = -1;
+    private int cols = -1;
+
+    // one step of the walk over the region
+    private static final class Frame {
+        final ComputationNode node;
+        final boolean negate;
+        final boolean transpose;
+        int next = 0;
+
+        Frame(ComputationNode node, boolean negate, boolean transpose) {
+            this.node = node;
+            this.negate = negate;
+            this.transpose = transpose;
+        }
+    }
+
+    /**
+     * Builds the kernel for the elementwise region rooted at root.
+     * Every node below the region has to be resolved already.
+     */
+    FusedElementwise(ComputationNode root) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(root, false, false));
+        int depth = 0;
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            ComputationNode node = frame.node;
+            ComputationNodeType type = node.getNodeType();
+            List<ComputationNode> children = node.getChildren();
+            if (type == ComputationNodeType.MATRIX) {
+                addOperand(node.getStoredMatrix(), frame.negate, frame.transpose ^ node.isTransposedView());
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+                stack.pop();
+            } else if (type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE) {
+                if (children.size() != 1) {
+                    throw new IllegalArgumentException(type + " needs exactly one operand");
+                }
+                if (frame.next == 0) {
+                    frame.next = 1;
+                    boolean negate = frame.negate ^ (type == ComputationNodeType.NEGATE);
+                    boolean transpose = frame.transpose ^ (type == ComputationNodeType.TRANSPOSE);
+                    stack.push(new Frame(children.get(0), negate, transpose));
+                } else {
+                    stack.pop();
+                }
+            } else if (type == ComputationNodeType.ADD) {
+                if (children.isEmpty()) {
+                    throw new IllegalArgumentException("ADD needs at least one operand");
+                }
+                // a child just finished, fold it into the running sum of the ones before it
+                if (frame.next >= 2) {
+                    program.add(ADD);
+                    depth--;
+                }
+                if (frame.next < children.size()) {
+                    // a negation above the sum is applied to the sum, -(A + B) and -A + -B differ in signed zeros
+                    stack.push(new Frame(children.get(frame.next), false, frame.transpose));
+                    frame.next++;
+                } else {
+                    if (frame.negate) {
+                        program.add(NEGATE);
+                    }
+                    stack.pop();
+                }
+            } else {
+                throw new IllegalArgumentException("unresolved operand in elementwise region: " + type);
+            }
+        }
+    }
+
+    private void addOperand(double[][] matrix, boolean negate, boolean transpose) {
+        int r = matrix.length;
+        int c = r == 0 ? 0 : matrix[0].length;
+        for (double[] row : matrix) {
+            if (row.length != c) {
+                throw new IllegalArgumentException("all rows must have the same length");
+            }
+        }
+        if (transpose) {
+            int tmp = r;
+            r = c;
+            c = tmp;
+        }
+        if (rows == -1) {
+            rows = r;
+            cols = c;
+        } else if (rows != r || cols != c) {
+            throw new IllegalArgumentException("dimentions dont match - on add task.");
+        }
+        program.add(operands.size());
+        operands.add(matrix);
+        negated.add(negate);
+        transposed.add(transpose);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int cols() {
+        return cols;
+    }
+
+    // element operations per output row: one load per operand plus one pass per addition
+    double rowCost() {
+        return (double) cols * program.size();
+    }
+
+    // the leaves of the region as they are stored, in program order
+    List<int[]> operandShapes() {
+        List<int[]> shapes = new ArrayList<>();
+        for (double[][] matrix : operands) {
+            shapes.add(new int[]{matrix.length, matrix.length == 0 ? 0 : matrix[0].length});
+        }
+        return shapes;
+    }
+
+    // one flop per output element for every addition, negation and negated operand
+    long flops() {
+        long perElement = 0;
+        for (int op : program) {
+            if (op < 0 || negated.get(op)) {
+                perElement++;
+            }
+        }
+        return perElement * rows * cols;
+    }
+
+    /**
+     * One task per chunk of about rowsPerTask output rows (rounded up to whole blocks),
+     * each chunk is computed ROW_BLOCK rows at a time and fills its rows of out with fresh arrays.
+     */
+    List<Runnable> createTasks(double[][] out, int rowsPerTask) {
+        int chunk = Math.max(1, (rowsPerTask + ROW_BLOCK - 1) / ROW_BLOCK) * ROW_BLOCK;
+        return RangeTask.split(rows, chunk, (from, to) -> {
+            // the bottom of the stack holds the output rows themselves, the scratch rows above it
+            // are allocated once per task and reused by every block
+            double[][][] stack = new double[maxDepth][][];
+            for (int level = 1; level < maxDepth; level++) {
+                stack[level] = new double[Math.min(ROW_BLOCK, to - from)][cols];
+            }
+            for (int r0 = from; r0 < to; r0 += ROW_BLOCK) {
+                int n = Math.min(to, r0 + ROW_BLOCK) - r0;
+                stack[0] = new double[n][cols];
+                computeBlock(r0, n, stack);
+                System.arraycopy(stack[0], 0, out, r0, n);
+            }
+        });
+    }
+
+    // computes output rows r0 .. r0 + n - 1 into stack[0], every stack level has at least n rows
+    private void computeBlock(int r0, int n, double[][][] stack) {
+        int top = 0;
+        for (int op : program) {
+            if (op == ADD) {
+                for (int k = 0; k < n; k++) {
+                    double[] sum = stack[top - 2][k];
+                    double[] addend = stack[top - 1][k];
+                    for (int j = 0; j < cols; j++) {
+                        sum[j] += addend[j];
+                    }
+                }
+                top--;
+            } else if (op == NEGATE) {
+                for (int k = 0; k < n; k++) {
+                    double[] row = stack[top - 1][k];
+                    for (int j = 0; j < cols; j++) {
+                        row[j] = -row[j];
+                    }
+                }
+            } else {
+                loadOperand(op, r0, n, stack[top]);
+                top++;
+            }
+        }
+    }
+
+    // fills target[k] with row r0 + k of the operand as it appears in the output, for k < n
+    private void loadOperand(int operand, int r0, int n, double[][] target) {
+        double[][] matrix = operands.get(operand);
+        boolean negate = negated.get(operand);
+        if (transposed.get(operand)) {
+            // output rows r0.. are columns r0.. of the stored matrix, walk each stored row once
+            for (int j = 0; j < cols; j++) {
+                double[] source = matrix[j];
+                for (int k = 0; k < n; k++) {
+                    target[k][j] = negate ? -source[r0 + k] : source[r0 + k];
+                }
+            }
+        } else {
+            for (int k = 0; k < n; k++) {
+                double[] source = matrix[r0 + k];
+                if (negate) {
+                    for (int j = 0; j < cols; j++) {
+                        target[k][j] = -source[j];
+                    }
+                } else {
+                    System.arraycopy(source, 0, target[k], 0, cols);
+                }
+            }
+        }
+    }
+}
@@ -1,130 +1,492 @@
 package spl.lae;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import memory.MatrixStorage;
 import memory.SharedMatrix;
+import memory.VectorOrientation;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import parser.EvaluationPlan;
+import scheduling.RangeTask;
+import scheduling.SchedulingMode;
 import scheduling.TiredExecutor;
 
 public class LinearAlgebraEngine {
 
-    private SharedMatrix leftMatrix = new SharedMatrix();
-    private SharedMatrix rightMatrix = new SharedMatrix();
-    private TiredExecutor executor;
+    // 64x64 output tiles with 256-long depth blocks keep a tile's row and column panels
+    // (2 * 64 * 256 doubles = 256KB) inside a typical L2 cache
+    public static final int DEFAULT_TILE_SIZE = 64;
+    private static final int DEPTH_BLOCK = 256;
+
+    // the engine keeps no operands of its own, every node evaluation has its own OperandContext
+    private final int tileSize;
+    private final int workerCount; // used to size the row chunks
+    private final TiredExecutor executor;
+    private volatile EngineMetrics metrics = new EngineMetrics(); // of the last run
 
     public LinearAlgebraEngine(int numThreads) {
+        this(numThreads, DEFAULT_TILE_SIZE);
+    }
+
+    public LinearAlgebraEngine(int numThreads, int tileSize) {
+        this(numThreads, tileSize, SchedulingMode.HANDOFF);
+    }
+
+    public LinearAlgebraEngine(int numThreads, int tileSize, SchedulingMode mode) {
         // TODO: create executor with given thread count
-        this.executor = new TiredExecutor(numThreads);
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tile size must be positive");
+        }
+        this.tileSize = tileSize;
+        this.executor = new TiredExecutor(numThreads, mode);
+        this.workerCount = numThreads;
     }
 
     public ComputationNode run(ComputationNode computationRoot) {
         // TODO: resolve computation tree step by step until final matrix is produced
-        ComputationNode active = computationRoot.findResolvable();
-        while (active != null) {
-            loadAndCompute(active);
-            active = computationRoot.findResolvable();
+        EngineMetrics runMetrics = new EngineMetrics();
+        metrics = runMetrics;
+        return run(computationRoot, runMetrics);
+    }
+
+    /**
+     * Same as run(computationRoot), with the node metrics going to the given metrics instead of
+     * getMetrics(). Every call keeps its own plan and node contexts, so several trees can be run
+     * on the same engine at once from different threads, and only share the workers.
+     */
+    public ComputationNode run(ComputationNode computationRoot, EngineMetrics runMetrics) {
+        List<OperandContext> inFlight = new ArrayList<>();
+        try {
+            // every node is submitted as soon as its operands are ready, without waiting for the
+            // nodes already computing, so independent subtrees share the workers and the next
+            // node's operands are loaded while the workers are still busy.
+            // chains of ADD/NEGATE/TRANSPOSE are scheduled as one node and computed in one pass
+            EvaluationPlan plan = new EvaluationPlan(computationRoot, true);
+            List<ComputationNode> ready = plan.takeReady();
+            while (!ready.isEmpty() || !inFlight.isEmpty()) {
+                for (ComputationNode node : ready) {
+                    List<Runnable> tasks = new ArrayList<>();
+                    OperandContext context = prepare(node, tasks);
+                    context.submittedAt = System.nanoTime();
+                    context.done = executor.submitAllAsync(tasks)
+                            .whenComplete((ignored, failure) -> context.computedAt = System.nanoTime());
+                    inFlight.add(context);
+                }
+                awaitAny(inFlight);
+                // resolving happens on this thread only, the plan is not shared with the workers
+                for (Iterator<OperandContext> it = inFlight.iterator(); it.hasNext(); ) {
+                    OperandContext context = it.next();
+                    if (!context.done.isDone()) {
+                        continue;
+                    }
+                    it.remove();
+                    joinTasks(context.done);
+                    long readStart = System.nanoTime();
+                    resolve(context);
+                    record(runMetrics, context, System.nanoTime() - readStart);
+                    plan.markResolved(context.node);
+                }
+                ready = plan.takeReady();
+            }
+        } catch (RuntimeException | Error e) {
+            // let the nodes still computing finish, so a failed run leaves nothing on the workers
+            for (OperandContext context : inFlight) {
+                context.done.exceptionally(t -> null).join();
+            }
+            throw e;
         }
         return computationRoot;
     }
 
+    // waits until at least one of the nodes has finished computing
+    private static void awaitAny(List<OperandContext> inFlight) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[inFlight.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = inFlight.get(i).done;
+        }
+        CompletableFuture.anyOf(futures).exceptionally(t -> null).join();
+    }
+
+    // a task that failed fails the whole run with its own exception
+    private static void joinTasks(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     public void loadAndCompute(ComputationNode node) {
         // TODO: load operand matrices
         // TODO: create compute tasks & submit tasks to executor
-        List<Runnable> tasks;
+        List<Runnable> tasks = new ArrayList<>();
+        OperandContext context = prepare(node, tasks);
+        context.submittedAt = System.nanoTime();
+        executor.submitAll(tasks);
+        context.computedAt = System.nanoTime();
+        long readStart = System.nanoTime();
+        resolve(context);
+        record(metrics, context, System.nanoTime() - readStart);
+    }
+
+    /**
+     * Per-node timings and flop counts of the last run, and of loadAndCompute calls since.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // loads the operands of node and adds its tasks to tasks, timing both
+    private OperandContext prepare(ComputationNode node, List<Runnable> tasks) {
+        long start = System.nanoTime();
+        List<int[]> shapes = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) {
+            shapes.add(child.getShape());
+        }
+        OperandContext context = loadOperands(node);
+        tasks.addAll(createTasks(context));
+        context.operator = node.getNodeType();
+        context.operandShapes = context.fused != null ? context.fused.operandShapes() : shapes;
+        context.taskCount = tasks.size();
+        context.flops = flops(context);
+        context.loadNanos = System.nanoTime() - start;
+        return context;
+    }
+
+    private static void record(EngineMetrics metrics, OperandContext context, long readbackNanos) {
+        metrics.add(new NodeMetrics(context.operator, context.fused != null, context.operandShapes,
+                context.node.getShape(), context.taskCount, context.loadNanos, context.computedAt - context.submittedAt, readbackNanos, context.flops));
+    }
+
+    // floating point operations of the node's tasks, counted once the operands are loaded
+    private static long flops(OperandContext context) {
+        if (context.fused != null) {
+            return context.fused.flops();
+        }
+        if (context.left == null) {
+            return 0; // passed through, see loadOperands
+        }
+        long rows = context.left.length();
+        long cols = rowLength(context.left);
+        switch (context.node.getNodeType()) {
+            case ADD:
+            case NEGATE:
+                return rows * cols;
+            case MULTIPLY:
+                // the right operand is held by columns
+                return 2 * rows * cols * context.right.length();
+            default:
+                return 0;
+        }
+    }
+
+    // loads the children of node into a fresh operand context.
+    // transposed views are passed on as they are wherever the kernel can read them that way
+    private OperandContext loadOperands(ComputationNode node) {
+        ComputationNodeType type = node.getNodeType();
         List<ComputationNode> children = node.getChildren();
-        double[][] first = children.get(0).getMatrix();
-        leftMatrix.loadRowMajor(first);
+        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.MULTIPLY)
+                && children.size() == 1 && allResolved(children)) {
+            // a sum or product of a single matrix is that matrix
+            OperandContext context = new OperandContext(node, null, null);
+            context.product = children.get(0).getStoredMatrix();
+            context.transposed = children.get(0).isTransposedView();
+            return context;
+        }
+        if (EvaluationPlan.isElementwise(type)) {
+            if (!allResolved(children) || !sameView(children)) {
+                OperandContext context = new OperandContext(node, null, null);
+                context.fused = new FusedElementwise(node);
+                return context;
+            }
+            if (type == ComputationNodeType.TRANSPOSE) {
+                if (children.size() != 1) {
+                    throw new IllegalArgumentException("TRANSPOSE needs exactly one operand");
+                }
+                // flipping the view is all there is to do, the engine never runs transpose tasks
+                OperandContext context = new OperandContext(node, null, null);
+                context.product = children.get(0).getStoredMatrix();
+                context.transposed = !children.get(0).isTransposedView();
+                return context;
+            }
+            // -(S^T) = (-S)^T and S^T + U^T = (S + U)^T, so work on the stored matrices
+            SharedMatrix left = new SharedMatrix(children.get(0).getStoredMatrix());
+            SharedMatrix right = new SharedMatrix();
+            if (children.size() > 1) {
+                right.loadRowMajor(children.get(1).getStoredMatrix());
+            }
+            OperandContext context = new OperandContext(node, left, right);
+            context.transposed = children.get(0).isTransposedView();
+            return context;
+        }
+        SharedMatrix left = new SharedMatrix(children.get(0).getMatrix());
+        SharedMatrix right = new SharedMatrix();
         if (children.size() > 1) {
-            double[][] second = children.get(1).getMatrix();
-            rightMatrix.loadRowMajor(second);
+            ComputationNode second = children.get(1);
+            if (type == ComputationNodeType.MULTIPLY && second.isTransposedView()) {
+                // the columns of a transposed view are the rows it stores
+                right.loadColumns(second.getStoredMatrix());
+            } else if (type == ComputationNodeType.MULTIPLY) {
+                // the multiply kernel reads the right operand by columns, so pack it that way directly,
+                // all columns back to back in one array
+                right = SharedMatrix.withStorage(MatrixStorage.FLAT);
+                right.loadColumnMajor(second.getMatrix());
+            } else {
+                right.loadRowMajor(second.getMatrix());
+            }
         }
+        return new OperandContext(node, left, right);
+    }
 
-        ComputationNodeType type = node.getNodeType();
-        if (type == ComputationNodeType.ADD) {
-            tasks = createAddTasks();
+    private static boolean allResolved(List<ComputationNode> nodes) {
+        for (ComputationNode node : nodes) {
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // true if the nodes are all transposed views or all plain matrices
+    private static boolean sameView(List<ComputationNode> nodes) {
+        for (ComputationNode node : nodes) {
+            if (node.isTransposedView() != nodes.get(0).isTransposedView()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void resolve(OperandContext context) {
+        double[][] result = readResult(context);
+        if (context.transposed) {
+            context.node.resolveTransposed(result);
+        } else {
+            context.node.resolve(result);
+        }
+    }
+
+    private List<Runnable> createTasks(OperandContext context) {
+        ComputationNodeType type = context.node.getNodeType();
+        if (context.fused == null && context.left == null) {
+            // the result is already known, see loadOperands
+            return new ArrayList<>();
+        }
+        // row-wise work is cut into chunks sized from the shape and the cost of a row,
+        // so a task is worth its scheduling and there are still a few per worker
+        if (context.fused != null) {
+            FusedElementwise fused = context.fused;
+            context.product = new double[fused.rows()][];
+            return fused.createTasks(context.product, RangeTask.chunkSize(fused.rows(), fused.rowCost(), workerCount));
+        }
+        else if (type == ComputationNodeType.ADD) {
+            return createAddTasks(context, RangeTask.chunkSize(context.left.length(), rowLength(context.left), workerCount));
         } 
         else if (type == ComputationNodeType.MULTIPLY) {
-            tasks = createMultiplyTasks();
+            return createMultiplyTasks(context);
         } 
         else if (type == ComputationNodeType.NEGATE) {
-            tasks = createNegateTasks();
-        } 
-        else if (type == ComputationNodeType.TRANSPOSE) {
-            tasks = createTransposeTasks();
+            return createNegateTasks(context, RangeTask.chunkSize(context.left.length(), rowLength(context.left), workerCount));
         } 
         else {
             throw new IllegalArgumentException("unknown operation: " + type);
         }
+    }
 
-        executor.submitAll(tasks);
-        double[][] result = leftMatrix.readRowMajor();
-        node.resolve(result);
+    private static double[][] readResult(OperandContext context) {
+        // tile and fused tasks write straight into the product, no need to read it back
+        if (context.product != null) {
+            return context.product;
+        }
+        // the left operand was built on the first child's rows and is not used after this,
+        // so its rows become the node's matrix without another copy
+        return context.left.detachRowMajor();
+    }
+
+    // the public task factories take their operands from the caller, one task per row
+    // (per tile for multiply). add, negate and transpose work on left in place, like the
+    // engine's own tasks, multiply overwrites out with the product and needs a row-major
+    // left. transpose tasks are only made for callers, the engine resolves TRANSPOSE nodes
+    // to views
+
+    public List<Runnable> createAddTasks(SharedMatrix left, SharedMatrix right) {
+        return createAddTasks(new OperandContext(null, left, right), 1);
+    }
+
+    public List<Runnable> createMultiplyTasks(SharedMatrix left, SharedMatrix right, double[][] out) {
+        if (out == null) {
+            throw new IllegalArgumentException("the output must not be null");
+        }
+        OperandContext context = new OperandContext(null, left, right);
+        context.product = out;
+        return createMultiplyTasks(context);
+    }
+
+    public List<Runnable> createNegateTasks(SharedMatrix matrix) {
+        return createNegateTasks(new OperandContext(null, matrix, null), 1);
     }
 
-    public List<Runnable> createAddTasks() {
+    public List<Runnable> createTransposeTasks(SharedMatrix matrix) {
+        return createTransposeTasks(new OperandContext(null, matrix, null), 1);
+    }
+
+    private static List<Runnable> createAddTasks(OperandContext context, int rowsPerTask) {
         // TODO: return tasks that perform row-wise addition
-        int rows = leftMatrix.length();
+        SharedMatrix left = context.left;
+        SharedMatrix right = context.right;
+        int rows = left.length();
         if (rows == 0) { 
             return Arrays.asList();
         }
-        if (rows != rightMatrix.length() || leftMatrix.get(0).length() != rightMatrix.get(0).length()) {
+        if (rows != right.length() || left.get(0).length() != right.get(0).length()) {
             throw new IllegalArgumentException("dimentions dont match - on add task.");
         }
-        Runnable[] tasks = new Runnable[rows];
-        for (int i = 0; i < rows; i++) {
-            final int index = i;
-            tasks[i] = () -> {
-                leftMatrix.get(index).add(rightMatrix.get(index));
-            };
-        }
-        return Arrays.asList(tasks);
+        return RangeTask.split(rows, rowsPerTask, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                left.get(i).add(right.get(i));
+            }
+        });
     }
 
-    public List<Runnable> createMultiplyTasks() {
+    List<Runnable> createMultiplyTasks(OperandContext context) {
         // TODO: return tasks that perform row × matrix multiplication
-        int rows = leftMatrix.length();
+        final SharedMatrix left = context.left;
+        int rows = left.length();
         if (rows == 0) { 
+            if (context.product == null) {
+                context.product = new double[0][0];
+            }
             return Arrays.asList();
         }
-        if (leftMatrix.get(0).length() != rightMatrix.length()) {
+        if (left.getOrientation() != VectorOrientation.ROW_MAJOR) {
+            // the tile kernel reads the left operand by rows
+            throw new IllegalArgumentException("the left operand of a multiply must be row-major");
+        }
+        if (left.get(0).length() != rowCount(context.right)) {
             throw new IllegalArgumentException("dimentions dont match - on multiply task.");
         }
-        Runnable[] tasks = new Runnable[rows];
-        for (int i = 0; i < rows; i++) {
-            final int index = i;
-            tasks[i] = () -> {
-                leftMatrix.get(index).vecMatMul(this.rightMatrix);
-            };
+        // transpose the right operand once here so every tile task shares the same column-major copy
+        if (context.right.getOrientation() == VectorOrientation.ROW_MAJOR) {
+            SharedMatrix packed = SharedMatrix.withStorage(MatrixStorage.FLAT);
+            packed.loadColumnMajor(context.right.readRowMajor());
+            context.right = packed;
+        }
+        final SharedMatrix right = context.right;
+        int cols = right.length();
+        // the engine's own nodes get a fresh product, the public factory is handed one
+        if (context.product == null) {
+            context.product = new double[rows][cols];
+        } else if (context.product.length != rows || context.product[0].length != cols) {
+            throw new IllegalArgumentException("the output does not match the product's shape");
         }
-        return Arrays.asList(tasks);
+        final double[][] out = context.product;
+
+        // one task per output tile, each tile only ever writes its own cells of the product
+        List<Runnable> tasks = new ArrayList<>();
+        for (int rowStart = 0; rowStart < rows; rowStart += tileSize) {
+            for (int colStart = 0; colStart < cols; colStart += tileSize) {
+                final int r0 = rowStart;
+                final int r1 = Math.min(rows, rowStart + tileSize);
+                final int c0 = colStart;
+                final int c1 = Math.min(cols, colStart + tileSize);
+                tasks.add(() -> {
+                    multiplyTile(left, right, out, r0, r1, c0, c1);
+                });
+            }
+        }
+        return tasks;
     }
 
-    public List<Runnable> createNegateTasks() {
-        // TODO: return tasks that negate rows
-        int rows = leftMatrix.length();
-        Runnable[] tasks = new Runnable[rows];
-        for (int i = 0; i < rows; i++) {
-            final int index = i;
-            tasks[i] = () -> {
-                leftMatrix.get(index).negate();
-            };
+    // computes out[r0..r1) x [c0..c1) = left rows · right columns, blocked over the shared depth
+    private static void multiplyTile(SharedMatrix left, SharedMatrix right, double[][] out,
+                                     int r0, int r1, int c0, int c1) {
+        for (int i = r0; i < r1; i++) {
+            left.get(i).readLock();
+        }
+        for (int j = c0; j < c1; j++) {
+            right.get(j).readLock();
+        }
+        try {
+            // the depth blocks add into the tile, so it starts from zero whatever out held
+            for (int i = r0; i < r1; i++) {
+                Arrays.fill(out[i], c0, c1, 0.0);
+            }
+            int depth = left.get(r0).length();
+            for (int k0 = 0; k0 < depth; k0 += DEPTH_BLOCK) {
+                int k1 = Math.min(depth, k0 + DEPTH_BLOCK);
+                for (int i = r0; i < r1; i++) {
+                    double[] row = left.get(i).rawData();
+                    int rowOff = left.get(i).rawOffset();
+                    double[] outRow = out[i];
+                    for (int j = c0; j < c1; j++) {
+                        double[] column = right.get(j).rawData();
+                        int colOff = right.get(j).rawOffset();
+                        double sum = outRow[j];
+                        for (int k = k0; k < k1; k++) {
+                            sum += row[rowOff + k] * column[colOff + k];
+                        }
+                        outRow[j] = sum;
+                    }
+                }
+            }
+        } finally {
+            for (int j = c0; j < c1; j++) {
+                right.get(j).readUnlock();
+            }
+            for (int i = r0; i < r1; i++) {
+                left.get(i).readUnlock();
+            }
         }
-        return Arrays.asList(tasks);
     }
 
-    public List<Runnable> createTransposeTasks() {
+    private static List<Runnable> createNegateTasks(OperandContext context, int rowsPerTask) {
+        // TODO: return tasks that negate rows
+        SharedMatrix left = context.left;
+        return RangeTask.split(left.length(), rowsPerTask, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                left.get(i).negate();
+            }
+        });
+    }
+
+    private static List<Runnable> createTransposeTasks(OperandContext context, int rowsPerTask) {
         // TODO: return tasks that transpose rows
-        int rows = leftMatrix.length();
-        Runnable[] tasks = new Runnable[rows];
-        for (int i = 0; i < rows; i++) {
-            final int index = i;
-            tasks[i] = () -> {
-                leftMatrix.get(index).transpose();
-            };
-        }
-        return Arrays.asList(tasks);
+        SharedMatrix left = context.left;
+        return RangeTask.split(left.length(), rowsPerTask, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                left.get(i).transpose();
+            }
+        });
+    }
+
+    private static int rowLength(SharedMatrix matrix) {
+        return matrix.length() == 0 ? 0 : matrix.get(0).length();
+    }
+
+    // number of rows in the logical matrix, regardless of how it is stored
+    private static int rowCount(SharedMatrix matrix) {
+        if (matrix.length() == 0) {
+            return 0;
+        }
+        if (matrix.getOrientation() == VectorOrientation.ROW_MAJOR) {
+            return matrix.length();
+        }
+        return matrix.get(0).length();
     }
 
     public String getWorkerReport() {
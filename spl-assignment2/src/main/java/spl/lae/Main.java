@@ -1,21 +1,39 @@
 package spl.lae;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.management.JMException;
+
+import parser.BinaryMatrixFormat;
+import parser.ChainPlan;
 import parser.ComputationNode;
 import parser.InputParser;
 import parser.OutputWriter;
+import parser.TreeOptimizer;
+import scheduling.SchedulingMode;
 
 public class Main {
+
+    static final String METRICS_SUFFIX = ".metrics.json";
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.err.println("Usage: java spl.lae.Main <num_threads> <input_file> <output_file>");
+        // server mode: java spl.lae.Main <num_threads> --spool <dir> and/or --socket <path> [options]
+        boolean serve = args.length >= 3 && (args[1].equals("--spool") || args[1].equals("--socket"));
+        if (args.length < 3) {
+            System.err.println("Usage: java spl.lae.Main <num_threads> <input_file> <output_file> [--compact] [--binary] [--work-stealing] [--metrics]");
+            System.err.println("       java spl.lae.Main <num_threads> [--spool <dir>] [--socket <path>] [--compact] [--binary] [--work-stealing] [--metrics]");
             return;
         }
 
         int numThreads = 0;
-        String inputPath = args[1];
-        String outputPath = args[2];
+        String inputPath = serve ? null : args[1];
+        String outputPath = serve ? null : args[2];
+        String spoolDir = null;
+        String socketPath = null;
 
         try {
             numThreads = Integer.parseInt(args[0]);
@@ -24,20 +42,58 @@ public class Main {
             return;
         }
 
+        // --work-stealing gives every worker its own deque instead of the single-slot handoff
+        SchedulingMode mode = SchedulingMode.HANDOFF;
+        // --metrics writes per-node timings, flop counts and the chosen multiply orders
+        // to <output_file>.metrics.json
+        boolean writeMetrics = false;
+        // --compact writes the result with one row per line instead of the indented layout,
+        // --binary (or a .laeb output file) writes the binary format. binary input is detected on its own
+        OutputWriter.Format format = OutputWriter.Format.PRETTY;
+        if (!serve && outputPath.endsWith(BinaryMatrixFormat.EXTENSION)) {
+            format = OutputWriter.Format.BINARY;
+        }
+        for (int i = serve ? 1 : 3; i < args.length; i++) {
+            if (serve && args[i].equals("--spool") && i + 1 < args.length) {
+                spoolDir = args[++i];
+            } else if (serve && args[i].equals("--socket") && i + 1 < args.length) {
+                socketPath = args[++i];
+            } else if (args[i].equals("--compact")) {
+                format = OutputWriter.Format.COMPACT;
+            } else if (args[i].equals("--binary")) {
+                format = OutputWriter.Format.BINARY;
+            } else if (args[i].equals("--work-stealing")) {
+                mode = SchedulingMode.WORK_STEALING;
+            } else if (args[i].equals("--metrics")) {
+                writeMetrics = true;
+            } else {
+                System.err.println("unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        if (serve) {
+            serve(numThreads, mode, format, writeMetrics, spoolDir, socketPath);
+            return;
+        }
+
         LinearAlgebraEngine engine = null;
 
         try {
-            InputParser parser = new InputParser();
-            ComputationNode root = parser.parse(inputPath);
-            root.associativeNesting();
-            engine = new LinearAlgebraEngine(numThreads);
+            List<ChainPlan> chainPlans = new ArrayList<>();
+            ComputationNode root = prepare(inputPath, chainPlans);
+            engine = new LinearAlgebraEngine(numThreads, LinearAlgebraEngine.DEFAULT_TILE_SIZE, mode);
             ComputationNode resultNode = engine.run(root);
             double[][] resultMatrix = resultNode.getMatrix();
-            OutputWriter.write(resultMatrix, outputPath);
+            OutputWriter.write(resultMatrix, outputPath, format);
+            if (writeMetrics) {
+                engine.getMetrics().addChainPlans(chainPlans);
+                engine.getMetrics().write(Paths.get(outputPath + METRICS_SUFFIX));
+            }
             System.out.println(engine.getWorkerReport());
         } catch (Exception e) {
             try {
-                OutputWriter.write(e.getMessage(), outputPath);
+                OutputWriter.write(e.getMessage(), outputPath, format);
             } catch (IOException ioException) {
                 System.err.println("failed to write error to output file: " + ioException.getMessage());
             }
@@ -52,4 +108,59 @@ public class Main {
             }
         }
     }
+
+    /**
+     * Parses the input file, picks the multiplication order of every MULTIPLY chain and applies
+     * the algebraic rewrites, ready for the engine. The orders that save work are added to
+     * reordered, the caller decides where they are reported.
+     */
+    static ComputationNode prepare(String inputPath, List<ChainPlan> reordered) throws ParseException {
+        ComputationNode root = new InputParser().parse(inputPath);
+        List<ChainPlan> chainPlans = new ArrayList<>();
+        root.associativeNesting(chainPlans);
+        for (ChainPlan plan : chainPlans) {
+            if (plan.getSavedFlops() > 0) {
+                reordered.add(plan);
+            }
+        }
+        return new TreeOptimizer().optimize(root);
+    }
+
+    // runs an EngineServer until it is sent SHUTDOWN or the JVM is stopped
+    private static void serve(int numThreads, SchedulingMode mode, OutputWriter.Format format,
+                              boolean writeMetrics, String spoolDir, String socketPath) {
+        LinearAlgebraEngine engine = null;
+        try {
+            engine = new LinearAlgebraEngine(numThreads, LinearAlgebraEngine.DEFAULT_TILE_SIZE, mode);
+            try {
+                engine.getExecutor().registerMBeans("lae-server");
+            } catch (JMException e) {
+                System.err.println("failed to register worker MBeans: " + e.getMessage());
+            }
+            // closed here as well, in case a listener fails to start
+            try (EngineServer server = new EngineServer(engine, numThreads, format, writeMetrics)) {
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                if (spoolDir != null) {
+                    server.serveDirectory(Paths.get(spoolDir));
+                    System.out.println("watching spool directory " + spoolDir);
+                }
+                if (socketPath != null) {
+                    server.serveSocket(Paths.get(socketPath));
+                    System.out.println("listening on " + socketPath);
+                }
+                server.awaitClose();
+            }
+            System.out.println(engine.getWorkerReport());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (engine != null && engine.getExecutor() != null) {
+                try {
+                    engine.getExecutor().shutdown();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
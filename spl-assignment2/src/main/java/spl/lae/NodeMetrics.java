@@ -0,0 +1,91 @@
+package spl.lae;
+
+import java.util.Arrays;
+import java.util.List;
+
+import parser.ComputationNodeType;
+
+/**
+ * What it took to resolve one node: the operand and result shapes, the time spent loading the
+ * operands and creating the tasks, computing (from submission until the last task is done, so
+ * it includes waiting behind other nodes' tasks) and reading the result back, the number of
+ * tasks, and the floating point operations done.
+ * A fused node covers its whole elementwise region, and its operands are the region's leaves.
+ */
+public class NodeMetrics {
+
+    private final ComputationNodeType operator;
+    private final boolean fused;
+    private final List<int[]> operandShapes;
+    private final int[] resultShape;
+    private final int taskCount;
+    private final long loadNanos;
+    private final long computeNanos;
+    private final long readbackNanos;
+    private final long flops;
+
+    NodeMetrics(ComputationNodeType operator, boolean fused, List<int[]> operandShapes, int[] resultShape,
+                int taskCount, long loadNanos, long computeNanos, long readbackNanos, long flops) {
+        this.operator = operator;
+        this.fused = fused;
+        this.operandShapes = operandShapes;
+        this.resultShape = resultShape;
+        this.taskCount = taskCount;
+        this.loadNanos = loadNanos;
+        this.computeNanos = computeNanos;
+        this.readbackNanos = readbackNanos;
+        this.flops = flops;
+    }
+
+    public ComputationNodeType getOperator() {
+        return operator;
+    }
+
+    public boolean isFused() {
+        return fused;
+    }
+
+    public List<int[]> getOperandShapes() {
+        return operandShapes;
+    }
+
+    public int[] getResultShape() {
+        return resultShape;
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public long getComputeNanos() {
+        return computeNanos;
+    }
+
+    public long getReadbackNanos() {
+        return readbackNanos;
+    }
+
+    public long getTotalNanos() {
+        return loadNanos + computeNanos + readbackNanos;
+    }
+
+    public long getFlops() {
+        return flops;
+    }
+
+    // flops per nanosecond of compute time are GFLOP/s
+    public double getGflops() {
+        return computeNanos == 0 ? 0 : (double) flops / computeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return operator + (fused ? " (fused)" : "") + " -> " + Arrays.toString(resultShape)
+                + ": load " + loadNanos + "ns, compute " + computeNanos + "ns, readback " + readbackNanos
+                + "ns, " + taskCount + " tasks, " + String.format("%.3f", getGflops()) + " GFLOP/s";
+    }
+}
@@ -0,0 +1,39 @@
+package spl.lae;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import memory.SharedMatrix;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+/**
+ * The operands and output of a single node evaluation.
+ * Every node being computed gets its own context, so several nodes can be
+ * in flight on the same engine and executor at the same time.
+ */
+class OperandContext {
+
+    final ComputationNode node;
+    final SharedMatrix left;
+    SharedMatrix right;
+    double[][] product = null; // output of a multiply, filled tile by tile
+    FusedElementwise fused = null; // set when the node evaluates a whole elementwise region
+    boolean transposed = false; // the result is stored transposed, see ComputationNode.resolveTransposed
+    CompletableFuture<Void> done = null; // completes when the node's tasks have all run
+
+    // for NodeMetrics
+    ComputationNodeType operator = null; // the node's type before it is resolved
+    List<int[]> operandShapes = null;
+    int taskCount = 0;
+    long flops = 0;
+    long loadNanos = 0;
+    long submittedAt = 0;
+    long computedAt = 0; // set before done completes
+
+    OperandContext(ComputationNode node, SharedMatrix left, SharedMatrix right) {
+        this.node = node;
+        this.left = left;
+        this.right = right;
+    }
+}
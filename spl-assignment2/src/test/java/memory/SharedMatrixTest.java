@@ -6,6 +6,8 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -135,6 +137,31 @@ public class SharedMatrixTest {
         assertEquals(VectorOrientation.COLUMN_MAJOR, matrix.getOrientation());
     }
 
+    // LOAD COLUMNS TESTS
+
+    @Test
+    public void testLoadColumns_Small_Pass() {
+        double[][] columns = {{1, 2, 3}, {4, 5, 6}};
+        matrix.loadColumns(columns);
+        assertEquals(VectorOrientation.COLUMN_MAJOR, matrix.getOrientation());
+        assertSame(columns[1], matrix.get(1).rawData());
+        assertArrayEquals(new double[]{1, 4}, matrix.readRowMajor()[0]);
+    }
+
+    @Test
+    public void testLoadColumns_Small_Fail() {
+        assertThrows(IllegalArgumentException.class, () -> matrix.loadColumns(null));
+        assertThrows(IllegalArgumentException.class, () -> matrix.loadColumns(new double[][]{{1, 2}, {3}}));
+    }
+
+    @Test
+    public void testLoadColumns_Mid_Pass() {
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        flat.loadColumns(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        assertEquals(3, flat.length());
+        assertArrayEquals(new double[]{2, 4, 6}, flat.readRowMajor()[1]);
+    }
+
     // READ ROW MAJOR TESTS
 
     @Test
@@ -186,6 +213,40 @@ public class SharedMatrixTest {
         assertEquals(7.0, result[199][199]);
     }
 
+    // DETACH ROW MAJOR TESTS
+
+    @Test
+    public void testDetachRowMajor_Small_Pass() {
+        double[][] data = {{1, 2}, {3, 4}};
+        matrix.loadRowMajor(data);
+        double[][] result = matrix.detachRowMajor();
+        assertSame(data[0], result[0]);
+        assertSame(data[1], result[1]);
+        assertEquals(0, matrix.length());
+    }
+
+    @Test
+    public void testDetachRowMajor_Small_Fail() {
+        // column-major data has no rows to hand over, so it is copied
+        double[][] data = {{1, 2}, {3, 4}};
+        matrix.loadColumnMajor(data);
+        double[][] result = matrix.detachRowMajor();
+        assertNotSame(data[0], result[0]);
+        assertArrayEquals(data[1], result[1]);
+        assertEquals(0, matrix.length());
+    }
+
+    @Test
+    public void testDetachRowMajor_Mid_Pass() {
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        double[][] data = {{1, 2, 3}, {4, 5, 6}};
+        flat.loadRowMajor(data);
+        double[][] result = flat.detachRowMajor();
+        assertArrayEquals(data[0], result[0]);
+        assertArrayEquals(data[1], result[1]);
+        assertEquals(0, new SharedMatrix().detachRowMajor().length);
+    }
+
     // GET() TESTS
 
     @Test
@@ -281,4 +342,78 @@ public class SharedMatrixTest {
         matrix.loadColumnMajor(new double[100][100]);
         assertEquals(VectorOrientation.COLUMN_MAJOR, matrix.getOrientation());
     }
-}
\ No newline at end of file
+
+    // FLAT STORAGE TESTS
+
+    @Test
+    public void testFlatStorage_Small_Pass() {
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        double[][] data = {{1, 2, 3}, {4, 5, 6}};
+        flat.loadRowMajor(data);
+        assertEquals(MatrixStorage.FLAT, flat.getStorage());
+        assertEquals(2, flat.length());
+        assertEquals(6.0, flat.get(1).get(2));
+        assertArrayEquals(data[1], flat.readRowMajor()[1]);
+    }
+
+    @Test
+    public void testFlatStorage_Small_Fail() {
+        assertThrows(IllegalArgumentException.class, () -> SharedMatrix.withStorage(null));
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        flat.loadRowMajor(new double[][]{{1, 2}, {3, 4}});
+        assertThrows(IndexOutOfBoundsException.class, () -> flat.get(0).get(2));
+    }
+
+    @Test
+    public void testFlatStorage_Mid_Pass() {
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        double[][] data = {{1, 2, 3}, {4, 5, 6}};
+        flat.loadColumnMajor(data);
+        assertEquals(3, flat.length());
+        assertEquals(VectorOrientation.COLUMN_MAJOR, flat.getOrientation());
+        assertArrayEquals(new double[]{3, 6}, flat.get(2).toArray());
+        double[][] back = flat.readRowMajor();
+        assertArrayEquals(data[0], back[0]);
+        assertArrayEquals(data[1], back[1]);
+    }
+
+    @Test
+    public void testFlatStorage_Mid_Fail() {
+        // operations on one row must not leak into its neighbours in the shared array
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        flat.loadRowMajor(new double[][]{{1, 1}, {2, 2}, {3, 3}});
+        flat.get(1).negate();
+        flat.get(1).add(new SharedVector(new double[]{10, 10}, VectorOrientation.ROW_MAJOR));
+        double[][] back = flat.readRowMajor();
+        assertArrayEquals(new double[]{1, 1}, back[0]);
+        assertArrayEquals(new double[]{8, 8}, back[1]);
+        assertArrayEquals(new double[]{3, 3}, back[2]);
+    }
+
+    @Test
+    public void testFlatStorage_Large_Pass() {
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        double[][] data = new double[1000][20];
+        for (int i = 0; i < 1000; i++) Arrays.fill(data[i], i);
+        flat.loadRowMajor(data);
+        SharedVector column = new SharedVector(new double[20], VectorOrientation.COLUMN_MAJOR);
+        Arrays.fill(column.rawData(), 1.0);
+        assertEquals(999.0 * 20, flat.get(999).dot(column));
+        double[][] back = flat.readRowMajor();
+        for (int i = 0; i < 1000; i++) assertArrayEquals(data[i], back[i]);
+    }
+
+    @Test
+    public void testFlatStorage_Large_Fail() {
+        // 46341 * 46341 elements do not fit in one array, the rows are kept as they are
+        double[] row = new double[46341];
+        row[46340] = 7;
+        double[][] data = new double[46341][];
+        Arrays.fill(data, row);
+        SharedMatrix flat = SharedMatrix.withStorage(MatrixStorage.FLAT);
+        flat.loadRowMajor(data);
+        assertEquals(46341, flat.length());
+        assertSame(row, flat.get(46340).rawData());
+        assertEquals(7.0, flat.get(0).get(46340));
+    }
+}
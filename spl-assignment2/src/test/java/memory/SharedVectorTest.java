@@ -1,8 +1,11 @@
 package memory;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
@@ -50,6 +53,57 @@ public class SharedVectorTest {
         assertEquals(999.9, v.get(size-1));
     }
 
+    // TOARRAY() / RAWDATA() TESTS
+
+    @Test
+    public void testToArray_Small_Pass() {
+        double[] data = {1.0, 2.0, 3.0};
+        SharedVector v = new SharedVector(data, VectorOrientation.ROW_MAJOR);
+        double[] copy = v.toArray();
+        assertArrayEquals(data, copy);
+        assertNotSame(data, copy);
+    }
+
+    @Test
+    public void testToArray_Small_Fail() {
+        SharedVector v = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        double[] copy = v.toArray();
+        copy[0] = 100.0;
+        assertEquals(1.0, v.get(0));
+    }
+
+    @Test
+    public void testRawData_Mid_Pass() {
+        double[] data = new double[100];
+        SharedVector v = new SharedVector(data, VectorOrientation.COLUMN_MAJOR);
+        v.readLock();
+        try {
+            assertSame(data, v.rawData());
+        } finally {
+            v.readUnlock();
+        }
+    }
+
+    @Test
+    public void testRawData_Mid_Fail() {
+        SharedVector v = new SharedVector(new double[]{1.0, 2.0}, VectorOrientation.ROW_MAJOR);
+        v.negate();
+        v.readLock();
+        try {
+            assertEquals(-1.0, v.rawData()[0]);
+        } finally {
+            v.readUnlock();
+        }
+    }
+
+    @Test
+    public void testToArray_Large_Pass() {
+        double[] data = new double[10000];
+        data[9999] = 5.0;
+        SharedVector v = new SharedVector(data, VectorOrientation.ROW_MAJOR);
+        assertEquals(5.0, v.toArray()[9999]);
+    }
+
     // LENGTH() TESTS
 
     @Test
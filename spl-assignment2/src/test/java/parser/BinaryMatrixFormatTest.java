@@ -0,0 +1,118 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryMatrixFormatTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    // ROUND TRIP TESTS
+
+    @Test
+    public void testRoundTrip_Small_Pass() throws Exception {
+        Path file = tempDir.resolve("m.laeb");
+        double[][] matrix = {{1.5, -2, Double.MIN_VALUE}, {Double.NaN, 1e300, -0.0}};
+        BinaryMatrixFormat.write(new ComputationNode(matrix), file);
+
+        assertTrue(BinaryMatrixFormat.isBinary(file));
+        ComputationNode read = BinaryMatrixFormat.read(file);
+        assertEquals(ComputationNodeType.MATRIX, read.getNodeType());
+        assertArrayEquals(matrix[0], read.getMatrix()[0]);
+        assertArrayEquals(matrix[1], read.getMatrix()[1]);
+        // the header is padded so the payload starts 8-byte aligned, then come 6 little-endian doubles
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(40 + 6 * 8, bytes.limit());
+        assertEquals(1.5, bytes.getDouble(40));
+    }
+
+    @Test
+    public void testRoundTrip_Small_Fail() throws Exception {
+        Path json = tempDir.resolve("m.json");
+        Files.writeString(json, "[[1]]");
+        assertFalse(BinaryMatrixFormat.isBinary(json));
+        assertThrows(ParseException.class, () -> BinaryMatrixFormat.read(json));
+    }
+
+    @Test
+    public void testRoundTrip_Mid_Pass() throws Exception {
+        // -(A + T(B)) * C, read back through InputParser
+        ComputationNode root = op(ComputationNodeType.MULTIPLY,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD,
+                        new ComputationNode(new double[][]{{1, 2}}),
+                        op(ComputationNodeType.TRANSPOSE, new ComputationNode(new double[][]{{3}, {4}})))),
+                new ComputationNode(new double[][]{{5}, {6}}));
+        Path file = tempDir.resolve("tree.bin");
+        BinaryMatrixFormat.write(root, file);
+
+        ComputationNode read = new InputParser().parse(file.toString());
+        assertEquals(ComputationNodeType.MULTIPLY, read.getNodeType());
+        ComputationNode add = read.getChildren().get(0).getChildren().get(0);
+        assertEquals(ComputationNodeType.ADD, add.getNodeType());
+        assertArrayEquals(new double[]{4}, add.getChildren().get(1).getChildren().get(0).getMatrix()[1]);
+        assertArrayEquals(new double[]{6}, read.getChildren().get(1).getMatrix()[1]);
+    }
+
+    @Test
+    public void testRoundTrip_Mid_Fail() throws Exception {
+        Path file = tempDir.resolve("m.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1, 2}, {3, 4}}), file);
+        // drop the last double of the payload
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(ParseException.class, () -> BinaryMatrixFormat.read(file));
+
+        Path error = tempDir.resolve("error.laeb");
+        BinaryMatrixFormat.writeError("dimentions dont match", error);
+        ParseException e = assertThrows(ParseException.class, () -> BinaryMatrixFormat.read(error));
+        assertTrue(e.getMessage().contains("dimentions dont match"));
+    }
+
+    @Test
+    public void testRoundTrip_Large_Fail() throws Exception {
+        // a shape whose byte count overflows a long must not pass the bounds check
+        Path file = tempDir.resolve("m.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1}}), file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(17, Integer.MAX_VALUE).putInt(21, Integer.MAX_VALUE);
+        Files.write(file, bytes);
+        assertThrows(ParseException.class, () -> BinaryMatrixFormat.read(file));
+    }
+
+    @Test
+    public void testRoundTrip_Large_Pass() throws IOException, ParseException {
+        // a left-nested chain deeper than a recursive reader could follow, over a bigger payload
+        ComputationNode root = new ComputationNode(new double[300][200]);
+        for (int i = 0; i < 20_000; i++) {
+            root = op(ComputationNodeType.NEGATE, root);
+        }
+        Path file = tempDir.resolve("deep.laeb");
+        BinaryMatrixFormat.write(root, file);
+
+        ComputationNode read = BinaryMatrixFormat.read(file);
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(ComputationNodeType.NEGATE, read.getNodeType());
+            read = read.getChildren().get(0);
+        }
+        assertArrayEquals(new int[]{300, 200}, read.getShape());
+    }
+}
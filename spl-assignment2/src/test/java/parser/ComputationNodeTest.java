@@ -0,0 +1,145 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ComputationNodeTest {
+
+    private static ComputationNode matrix(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    // GET SHAPE TESTS
+
+    @Test
+    public void testGetShape_Small_Pass() {
+        assertArrayEquals(new int[]{3, 4}, matrix(3, 4).getShape());
+    }
+
+    @Test
+    public void testGetShape_Small_Fail() {
+        ComputationNode bad = new ComputationNode((ComputationNodeType) null, List.of(matrix(1, 1)));
+        assertNull(bad.getShape());
+    }
+
+    @Test
+    public void testGetShape_Mid_Pass() {
+        ComputationNode node = op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.MULTIPLY, matrix(2, 5), matrix(5, 7)));
+        assertArrayEquals(new int[]{7, 2}, node.getShape());
+    }
+
+    // TRANSPOSED VIEW TESTS
+
+    @Test
+    public void testResolveTransposed_Small_Pass() {
+        double[][] stored = {{1, 2, 3}, {4, 5, 6}};
+        ComputationNode node = op(ComputationNodeType.TRANSPOSE, matrix(2, 3));
+        node.resolveTransposed(stored);
+
+        assertTrue(node.isTransposedView());
+        assertSame(stored, node.getStoredMatrix());
+        assertArrayEquals(new int[]{3, 2}, node.getShape());
+    }
+
+    @Test
+    public void testResolveTransposed_Mid_Pass() {
+        ComputationNode node = op(ComputationNodeType.TRANSPOSE, matrix(2, 3));
+        node.resolveTransposed(new double[][]{{1, 2, 3}, {4, 5, 6}});
+
+        double[][] value = node.getMatrix();
+        assertArrayEquals(new double[]{1, 4}, value[0]);
+        assertArrayEquals(new double[]{3, 6}, value[2]);
+        assertFalse(node.isTransposedView()); // the transpose is built once and kept
+        assertSame(value, node.getStoredMatrix());
+    }
+
+    @Test
+    public void testResolveTransposed_Mid_Fail() {
+        ComputationNode node = op(ComputationNodeType.TRANSPOSE, matrix(2, 3));
+        node.resolveTransposed(new double[][]{{1}});
+        node.resolve(new double[][]{{1}});
+        assertFalse(node.isTransposedView());
+    }
+
+    // ASSOCIATIVE NESTING TESTS
+
+    @Test
+    public void testAssociativeNesting_Small_Pass() {
+        ComputationNode a = matrix(2, 2), b = matrix(2, 2), c = matrix(2, 2);
+        ComputationNode root = op(ComputationNodeType.ADD, a, b, c);
+        root.associativeNesting();
+        assertEquals(2, root.getChildren().size());
+        assertSame(c, root.getChildren().get(1));
+        assertEquals(List.of(a, b), root.getChildren().get(0).getChildren());
+    }
+
+    @Test
+    public void testAssociativeNesting_Small_Fail() {
+        // square chains cost the same in every order, so they stay left-associative
+        ComputationNode a = matrix(4, 4), b = matrix(4, 4), c = matrix(4, 4);
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, a, b, c);
+        List<ChainPlan> plans = new ArrayList<>();
+        root.associativeNesting(plans);
+        assertSame(c, root.getChildren().get(1));
+        assertEquals(1, plans.size());
+        assertEquals(0, plans.get(0).getSavedFlops());
+        assertEquals("((M0 M1) M2)", plans.get(0).getOrder());
+    }
+
+    @Test
+    public void testAssociativeNesting_Mid_Pass() {
+        ComputationNode a = matrix(1000, 10), b = matrix(10, 1000), c = matrix(1000, 10);
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, a, b, c);
+        List<ChainPlan> plans = new ArrayList<>();
+        root.associativeNesting(plans);
+
+        assertSame(a, root.getChildren().get(0));
+        assertEquals(List.of(b, c), root.getChildren().get(1).getChildren());
+        ChainPlan plan = plans.get(0);
+        assertEquals("(M0 (M1 M2))", plan.getOrder());
+        assertEquals(2L * 1000 * 10 * 1000 + 2L * 1000 * 1000 * 10, plan.getLeftToRightFlops());
+        assertEquals(2L * 10 * 1000 * 10 + 2L * 1000 * 10 * 10, plan.getOptimalFlops());
+        assertTrue(plan.getSavedFlops() > 0);
+    }
+
+    @Test
+    public void testAssociativeNesting_Mid_Fail() {
+        // shapes that do not chain fall back to left-associative nesting, the engine reports the error
+        ComputationNode a = matrix(2, 3), b = matrix(4, 5), c = matrix(5, 1);
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, a, b, c);
+        List<ChainPlan> plans = new ArrayList<>();
+        root.associativeNesting(plans);
+        assertTrue(plans.isEmpty());
+        assertSame(c, root.getChildren().get(1));
+    }
+
+    @Test
+    public void testAssociativeNesting_Large_Pass() {
+        // n-ary operators below the root are nested too
+        ComputationNode inner = op(ComputationNodeType.ADD, matrix(2, 2), matrix(2, 2), matrix(2, 2), matrix(2, 2));
+        ComputationNode root = op(ComputationNodeType.NEGATE, inner);
+        root.associativeNesting();
+        assertEquals(2, inner.getChildren().size());
+        ComputationNode node = inner;
+        int depth = 0;
+        while (node.getNodeType() == ComputationNodeType.ADD) {
+            node = node.getChildren().get(0);
+            depth++;
+        }
+        assertEquals(3, depth);
+    }
+}
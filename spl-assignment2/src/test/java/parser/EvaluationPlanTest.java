@@ -0,0 +1,160 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class EvaluationPlanTest {
+
+    private static ComputationNode leaf() {
+        return new ComputationNode(new double[][]{{1}});
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    // CONSTRUCTOR TESTS
+
+    @Test
+    public void testConstructor_Small_Pass() {
+        ComputationNode root = op(ComputationNodeType.NEGATE, leaf());
+        EvaluationPlan plan = new EvaluationPlan(root);
+        assertEquals(1, plan.getOrder().size());
+        assertFalse(plan.isDone());
+    }
+
+    @Test
+    public void testConstructor_Small_Fail() {
+        assertThrows(IllegalArgumentException.class, () -> new EvaluationPlan(null));
+    }
+
+    @Test
+    public void testConstructor_Mid_Pass() {
+        EvaluationPlan plan = new EvaluationPlan(leaf());
+        assertTrue(plan.isDone());
+        assertNull(plan.pollReady());
+    }
+
+    @Test
+    public void testConstructor_Large_Pass() {
+        // a left-nested chain deep enough to overflow a recursive walk
+        ComputationNode root = leaf();
+        for (int i = 0; i < 100_000; i++) {
+            root = op(ComputationNodeType.ADD, root, leaf());
+        }
+        EvaluationPlan plan = new EvaluationPlan(root);
+        assertEquals(100_000, plan.getOrder().size());
+        assertSame(root, plan.getOrder().get(99_999));
+        assertEquals(1, plan.takeReady().size());
+    }
+
+    @Test
+    public void testConstructor_Fused_Pass() {
+        // -( (A*B) + T(C) ): the ADD and TRANSPOSE are absorbed into the NEGATE
+        ComputationNode product = op(ComputationNodeType.MULTIPLY, leaf(), leaf());
+        ComputationNode sum = op(ComputationNodeType.ADD, product, op(ComputationNodeType.TRANSPOSE, leaf()));
+        ComputationNode root = op(ComputationNodeType.NEGATE, sum);
+        EvaluationPlan plan = new EvaluationPlan(root, true);
+
+        assertEquals(Arrays.asList(product, root), plan.getOrder());
+        assertSame(product, plan.pollReady());
+        assertNull(plan.pollReady());
+        product.resolve(new double[][]{{1}});
+        plan.markResolved(product);
+        assertSame(root, plan.pollReady());
+    }
+
+    @Test
+    public void testConstructor_Fused_Fail() {
+        // an elementwise node below a multiply starts a region of its own
+        ComputationNode inner = op(ComputationNodeType.NEGATE, leaf());
+        ComputationNode root = op(ComputationNodeType.ADD, op(ComputationNodeType.MULTIPLY, inner, leaf()), leaf());
+        EvaluationPlan plan = new EvaluationPlan(root, true);
+
+        assertEquals(3, plan.getOrder().size());
+        assertThrows(IllegalArgumentException.class,
+                () -> plan.markResolved(op(ComputationNodeType.NEGATE, leaf())));
+    }
+
+    // READY / MARK RESOLVED TESTS
+
+    @Test
+    public void testMarkResolved_Small_Pass() {
+        ComputationNode inner = op(ComputationNodeType.NEGATE, leaf());
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE, inner);
+        EvaluationPlan plan = new EvaluationPlan(root);
+
+        assertSame(inner, plan.pollReady());
+        assertNull(plan.pollReady());
+        inner.resolve(new double[][]{{-1}});
+        plan.markResolved(inner);
+        assertSame(root, plan.pollReady());
+        root.resolve(new double[][]{{-1}});
+        plan.markResolved(root);
+        assertTrue(plan.isDone());
+    }
+
+    @Test
+    public void testMarkResolved_Small_Fail() {
+        ComputationNode inner = op(ComputationNodeType.NEGATE, leaf());
+        EvaluationPlan plan = new EvaluationPlan(op(ComputationNodeType.TRANSPOSE, inner));
+        assertThrows(IllegalStateException.class, () -> plan.markResolved(inner));
+        assertThrows(IllegalArgumentException.class, () -> plan.markResolved(leaf()));
+    }
+
+    @Test
+    public void testMarkResolved_Mid_Pass() {
+        // (A*B) + (C*D): both products are ready at once, the sum only after both
+        ComputationNode ab = op(ComputationNodeType.MULTIPLY, leaf(), leaf());
+        ComputationNode cd = op(ComputationNodeType.MULTIPLY, leaf(), leaf());
+        ComputationNode root = op(ComputationNodeType.ADD, ab, cd);
+        EvaluationPlan plan = new EvaluationPlan(root);
+
+        List<ComputationNode> ready = plan.takeReady();
+        assertEquals(2, ready.size());
+        assertTrue(ready.contains(ab) && ready.contains(cd));
+        ab.resolve(new double[][]{{1}});
+        plan.markResolved(ab);
+        assertTrue(plan.takeReady().isEmpty());
+        cd.resolve(new double[][]{{1}});
+        plan.markResolved(cd);
+        assertEquals(List.of(root), plan.takeReady());
+    }
+
+    @Test
+    public void testMarkResolved_Mid_Fail() {
+        ComputationNode inner = op(ComputationNodeType.NEGATE, leaf());
+        EvaluationPlan plan = new EvaluationPlan(op(ComputationNodeType.TRANSPOSE, inner));
+        inner.resolve(new double[][]{{1}});
+        plan.markResolved(inner);
+        assertThrows(IllegalStateException.class, () -> plan.markResolved(inner));
+    }
+
+    @Test
+    public void testMarkResolved_Large_Pass() {
+        ComputationNode root = leaf();
+        for (int i = 0; i < 1000; i++) {
+            root = op(ComputationNodeType.ADD, root, leaf());
+        }
+        EvaluationPlan plan = new EvaluationPlan(root);
+        int resolved = 0;
+        ComputationNode next = plan.pollReady();
+        while (next != null) {
+            next.resolve(new double[][]{{0}});
+            plan.markResolved(next);
+            resolved++;
+            next = plan.pollReady();
+        }
+        assertEquals(1000, resolved);
+        assertTrue(plan.isDone());
+    }
+}
@@ -0,0 +1,111 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InputParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ComputationNode parse(String json) throws IOException, ParseException {
+        Path input = tempDir.resolve("input.json");
+        Files.writeString(input, json);
+        return new InputParser().parse(input.toString());
+    }
+
+    // PARSE TESTS
+
+    @Test
+    public void testParse_Small_Pass() throws Exception {
+        ComputationNode root = parse("[[1.5, 2], [3, -4e2]]");
+        assertEquals(ComputationNodeType.MATRIX, root.getNodeType());
+        assertArrayEquals(new double[]{1.5, 2}, root.getMatrix()[0]);
+        assertArrayEquals(new double[]{3, -400}, root.getMatrix()[1]);
+    }
+
+    @Test
+    public void testParse_Small_Fail() {
+        assertThrows(ParseException.class, () -> parse("[]"));
+        assertThrows(ParseException.class, () -> parse("[1, 2]"));
+        assertThrows(ParseException.class, () -> parse("42"));
+        assertThrows(ParseException.class, () -> parse(""));
+    }
+
+    @Test
+    public void testParse_Mid_Pass() throws Exception {
+        // operands may come before the operator, unknown fields are skipped
+        ComputationNode root = parse("{\"operands\": [[[1]], {\"operator\": \"T\", \"note\": {\"x\": [1]},"
+                + " \"operands\": [[[2, 3]]]}], \"operator\": \"+\"}");
+        assertEquals(ComputationNodeType.ADD, root.getNodeType());
+        assertEquals(2, root.getChildren().size());
+        ComputationNode transpose = root.getChildren().get(1);
+        assertEquals(ComputationNodeType.TRANSPOSE, transpose.getNodeType());
+        assertArrayEquals(new int[]{1, 2}, transpose.getChildren().get(0).getShape());
+    }
+
+    @Test
+    public void testParse_Mid_Fail() {
+        ParseException e = assertThrows(ParseException.class, () -> parse("[[1, 2], [3]]"));
+        assertTrue(e.getMessage().contains("Inconsistent row sizes"));
+        assertThrows(ParseException.class, () -> parse("[[1, 2], [3, 4, 5]]"));
+        assertThrows(ParseException.class, () -> parse("[[1, 2], 3]"));
+        assertThrows(ParseException.class, () -> parse("[[1, [2]]]"));
+        assertThrows(ParseException.class, () -> parse("{\"operator\": \"+\"}"));
+        assertThrows(ParseException.class, () -> parse("{\"operator\": \"+\", \"operands\": [[1]]}"));
+        assertThrows(ParseException.class, () -> parse("{\"operator\": \"+\", \"operands\": 3}"));
+        assertThrows(IllegalArgumentException.class, () -> parse("{\"operator\": \"/\", \"operands\": []}"));
+        assertThrows(ParseException.class, () -> parse("[[1, 2]"));
+    }
+
+    @Test
+    public void testParse_FileReference_Pass() throws Exception {
+        // both references share one file, which is only read when a leaf is loaded
+        Files.createDirectories(tempDir.resolve("data"));
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1, 2}, {3, 4}}), tempDir.resolve("data/a.laeb"));
+        Files.writeString(tempDir.resolve("data/b.json"), "[[10, 20], [30, 40]]");
+        ComputationNode root = parse("{\"operator\": \"+\", \"operands\": [{\"file\": \"data/a.laeb\"},"
+                + " {\"file\": \"data/b.json\"}, {\"file\": \"data/../data/a.laeb\"}]}");
+
+        ComputationNode a = root.getChildren().get(0);
+        assertTrue(a.isFileBacked());
+        assertArrayEquals(new int[]{2, 2}, root.getChildren().get(1).getShape());
+        assertArrayEquals(new double[]{3, 4}, a.getMatrix()[1]);
+        assertArrayEquals(new double[]{30, 40}, root.getChildren().get(1).getMatrix()[1]);
+        assertTrue(root.getChildren().get(2).isFileBacked());
+    }
+
+    @Test
+    public void testParse_FileReference_Fail() {
+        assertThrows(ParseException.class, () -> parse("{\"file\": \"missing.laeb\"}"));
+        assertThrows(ParseException.class, () -> parse("{\"file\": 3}"));
+        assertThrows(ParseException.class, () -> parse("{\"file\": \"input.json\", \"operator\": \"-\", \"operands\": []}"));
+    }
+
+    @Test
+    public void testParse_Large_Pass() throws Exception {
+        // the first row is longer than the initial row buffer
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            json.append(i == 0 ? "[" : ",[");
+            for (int j = 0; j < 100; j++) {
+                json.append(j == 0 ? "" : ",").append(i * 100 + j);
+            }
+            json.append("]");
+        }
+        json.append("]");
+        double[][] matrix = parse(json.toString()).getMatrix();
+        assertEquals(50, matrix.length);
+        assertEquals(100, matrix[0].length);
+        assertEquals(4999.0, matrix[49][99]);
+    }
+}
@@ -0,0 +1,107 @@
+package parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MatrixFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    // LOAD TESTS
+
+    @Test
+    public void testLoad_Small_Pass() throws Exception {
+        Path file = tempDir.resolve("a.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1, 2, 3}, {4, 5, 6}}), file);
+        MatrixFile matrixFile = new MatrixFile(file);
+        assertFalse(matrixFile.isOpened());
+
+        assertArrayEquals(new int[]{2, 3}, matrixFile.shape());
+        double[][] first = matrixFile.load();
+        double[][] second = matrixFile.load();
+        assertArrayEquals(new double[]{4, 5, 6}, first[1]);
+        assertNotSame(first[1], second[1]); // every load gets rows of its own
+    }
+
+    @Test
+    public void testLoad_Small_Fail() throws Exception {
+        Path file = tempDir.resolve("tree.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(ComputationNodeType.NEGATE,
+                java.util.List.of(new ComputationNode(new double[][]{{1}}))), file);
+        assertThrows(IllegalArgumentException.class, () -> new MatrixFile(file).shape());
+        assertThrows(IllegalArgumentException.class, () -> new MatrixFile(null));
+    }
+
+    @Test
+    public void testLoad_Mid_Pass() throws Exception {
+        Path file = tempDir.resolve("a.json");
+        Files.writeString(file, "[[1, 2], [3, 4], [5, 6]]");
+        MatrixFile matrixFile = new MatrixFile(file);
+
+        assertArrayEquals(new int[]{3, 2}, matrixFile.shape());
+        assertTrue(matrixFile.isOpened());
+        assertArrayEquals(new double[]{5, 6}, matrixFile.load()[2]);
+    }
+
+    @Test
+    public void testLoad_Mid_Fail() throws Exception {
+        Path file = tempDir.resolve("bad.json");
+        Files.writeString(file, "[[1, 2], [3]]");
+        assertThrows(IllegalArgumentException.class, () -> new MatrixFile(file).load());
+    }
+
+    @Test
+    public void testLoad_Large_Pass() throws Exception {
+        // rows of 199 doubles never line up with the read buffer, so rows span chunks
+        double[][] matrix = new double[300][199];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                matrix[i][j] = i * 1000 + j;
+            }
+        }
+        Path file = tempDir.resolve("big.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(matrix), file);
+        double[][] loaded = new MatrixFile(file).load();
+        for (int i = 0; i < matrix.length; i++) {
+            assertArrayEquals(matrix[i], loaded[i]);
+        }
+
+        // a payload past 2 GB, in a sparse file; only the shape is asked for
+        Path huge = tempDir.resolve("huge.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1}}), huge);
+        long cols = 300_000_000L;
+        try (FileChannel channel = FileChannel.open(huge, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, (int) cols), 21);
+            channel.write(ByteBuffer.allocate(1), 40 + cols * Double.BYTES - 1);
+        }
+        assertArrayEquals(new int[]{1, (int) cols}, new MatrixFile(huge).shape());
+    }
+
+    // LAZY LEAF TESTS
+
+    @Test
+    public void testLeaf_Mid_Pass() throws Exception {
+        Path file = tempDir.resolve("a.laeb");
+        BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1, 2}}), file);
+        ComputationNode leaf = new ComputationNode(new MatrixFile(file));
+
+        assertTrue(leaf.isFileBacked());
+        assertArrayEquals(new int[]{1, 2}, leaf.getShape()); // from the header, nothing loaded
+        assertTrue(leaf.isFileBacked());
+        assertArrayEquals(new double[]{1, 2}, leaf.getMatrix()[0]);
+        assertFalse(leaf.isFileBacked());
+    }
+}
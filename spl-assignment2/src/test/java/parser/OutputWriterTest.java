@@ -0,0 +1,71 @@
+package parser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OutputWriterTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @TempDir
+    Path tempDir;
+
+    // WRITE TESTS
+
+    @Test
+    public void testWrite_Small_Pass() throws Exception {
+        // the default layout is exactly what the object mapper writes
+        double[][] matrix = {{1.5, -2}, {3e20, 0.1}};
+        Path out = tempDir.resolve("out.json");
+        OutputWriter.write(matrix, out.toString());
+        String expected = mapper.writerWithDefaultPrettyPrinter()
+                .writeValueAsString(new OutputWriter.ResultMatrix(matrix));
+        assertEquals(expected, Files.readString(out));
+    }
+
+    @Test
+    public void testWrite_Small_Fail() throws Exception {
+        Path out = tempDir.resolve("error.json");
+        OutputWriter.write("dimentions \"dont\" match", out.toString());
+        String expected = mapper.writerWithDefaultPrettyPrinter()
+                .writeValueAsString(new OutputWriter.ErrorMessage("dimentions \"dont\" match"));
+        assertEquals(expected, Files.readString(out));
+    }
+
+    @Test
+    public void testWrite_Mid_Pass() throws Exception {
+        double[][] matrix = {{1, 2, 3}, {4, 5, 6}};
+        Path out = tempDir.resolve("compact.json");
+        OutputWriter.write(matrix, out.toString(), OutputWriter.Format.COMPACT);
+
+        String text = Files.readString(out);
+        assertEquals("{\"result\":[\n[1.0,2.0,3.0],\n[4.0,5.0,6.0]\n]}\n", text);
+        JsonNode parsed = mapper.readTree(text);
+        assertEquals(6.0, parsed.get("result").get(1).get(2).asDouble());
+    }
+
+    @Test
+    public void testWrite_Mid_Fail() throws Exception {
+        Path out = tempDir.resolve("empty.json");
+        OutputWriter.write(new double[0][0], out.toString(), OutputWriter.Format.COMPACT);
+        assertEquals(0, mapper.readTree(Files.readString(out)).get("result").size());
+    }
+
+    @Test
+    public void testWrite_Large_Pass() throws Exception {
+        double[][] matrix = new double[300][300];
+        matrix[299][299] = 7.25;
+        Path out = tempDir.resolve("large.json");
+        OutputWriter.write(matrix, out.toString(), OutputWriter.Format.COMPACT);
+        assertEquals(302, Files.readAllLines(out).size());
+        assertEquals(7.25, mapper.readTree(out.toFile()).get("result").get(299).get(299).asDouble());
+    }
+}
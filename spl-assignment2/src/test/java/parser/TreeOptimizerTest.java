@@ -0,0 +1,160 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+public class TreeOptimizerTest {
+
+    private final Random rnd = new Random(3);
+
+    private ComputationNode matrix(int rows, int cols) {
+        double[][] data = new double[rows][cols];
+        for (double[] row : data) for (int j = 0; j < cols; j++) row[j] = rnd.nextInt(9) - 4;
+        return new ComputationNode(data);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    // straightforward reference evaluation of a binary tree
+    private static double[][] eval(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) return node.getMatrix();
+        double[][] a = eval(node.getChildren().get(0));
+        switch (node.getNodeType()) {
+            case NEGATE: {
+                double[][] r = new double[a.length][a[0].length];
+                for (int i = 0; i < a.length; i++) for (int j = 0; j < a[0].length; j++) r[i][j] = -a[i][j];
+                return r;
+            }
+            case TRANSPOSE: {
+                double[][] r = new double[a[0].length][a.length];
+                for (int i = 0; i < a.length; i++) for (int j = 0; j < a[0].length; j++) r[j][i] = a[i][j];
+                return r;
+            }
+            case ADD: {
+                double[][] b = eval(node.getChildren().get(1));
+                double[][] r = new double[a.length][a[0].length];
+                for (int i = 0; i < a.length; i++) for (int j = 0; j < a[0].length; j++) r[i][j] = a[i][j] + b[i][j];
+                return r;
+            }
+            default: {
+                double[][] b = eval(node.getChildren().get(1));
+                double[][] r = new double[a.length][b[0].length];
+                for (int i = 0; i < a.length; i++)
+                    for (int j = 0; j < b[0].length; j++)
+                        for (int k = 0; k < b.length; k++) r[i][j] += a[i][k] * b[k][j];
+                return r;
+            }
+        }
+    }
+
+    private static int operations(ComputationNode root) {
+        return root.getNodeType() == ComputationNodeType.MATRIX ? 0 : new EvaluationPlan(root).getOrder().size();
+    }
+
+    private static void assertSameResult(double[][] expected, ComputationNode optimized) {
+        double[][] actual = eval(optimized);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], actual[i]);
+    }
+
+    // OPTIMIZE TESTS
+
+    @Test
+    public void testOptimize_Small_Pass() {
+        ComputationNode a = matrix(2, 3);
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.TRANSPOSE, a));
+        TreeOptimizer optimizer = new TreeOptimizer();
+        assertSame(a, optimizer.optimize(root));
+        assertEquals(2, optimizer.getRemovedNodes());
+    }
+
+    @Test
+    public void testOptimize_Small_Fail() {
+        // a lone negation cannot be removed
+        ComputationNode root = op(ComputationNodeType.NEGATE, matrix(2, 2));
+        double[][] expected = eval(root);
+        ComputationNode optimized = new TreeOptimizer().optimize(root);
+        assertEquals(ComputationNodeType.NEGATE, optimized.getNodeType());
+        assertSameResult(expected, optimized);
+    }
+
+    @Test
+    public void testOptimize_Mid_Pass() {
+        // (-A) * (-B) = A * B and -(-(C)) = C
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.NEGATE, matrix(3, 4)),
+                        op(ComputationNodeType.NEGATE, matrix(4, 2))),
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.NEGATE, matrix(3, 2))));
+        double[][] expected = eval(root);
+        ComputationNode optimized = new TreeOptimizer().optimize(root);
+        assertEquals(2, operations(optimized));
+        assertSameResult(expected, optimized);
+    }
+
+    @Test
+    public void testOptimize_Mid_Fail() {
+        // invalid nodes are kept, so the engine still reports them
+        ComputationNode bad = new ComputationNode((ComputationNodeType) null,
+                new ArrayList<>(Arrays.asList(op(ComputationNodeType.NEGATE, op(ComputationNodeType.NEGATE, matrix(1, 1))))));
+        ComputationNode optimized = new TreeOptimizer().optimize(bad);
+        assertNull(optimized.getNodeType());
+        assertEquals(ComputationNodeType.MATRIX, optimized.getChildren().get(0).getNodeType());
+    }
+
+    @Test
+    public void testOptimize_Large_Pass() {
+        // T(A * B) with a 100x100 product becomes T(B) * T(A), -T(-X) cancels
+        ComputationNode a = matrix(100, 2);
+        ComputationNode b = matrix(2, 100);
+        ComputationNode root = op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, a, b))));
+        double[][] expected = eval(root);
+        ComputationNode optimized = new TreeOptimizer().optimize(root);
+        assertEquals(ComputationNodeType.MULTIPLY, optimized.getNodeType());
+        assertEquals(ComputationNodeType.TRANSPOSE, optimized.getChildren().get(0).getNodeType());
+        assertSame(b, optimized.getChildren().get(0).getChildren().get(0));
+        assertSameResult(expected, optimized);
+    }
+
+    @Test
+    public void testOptimize_SignKept_Pass() {
+        // -(U) * V with a 50x50 product keeps the negation on the 50x1 operand,
+        // -(A) * B with a 2x2 product negates the product instead
+        ComputationNode u = matrix(50, 1);
+        ComputationNode outer = op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.NEGATE, u), matrix(1, 50));
+        double[][] expected = eval(outer);
+        ComputationNode optimized = new TreeOptimizer().optimize(outer);
+        assertEquals(ComputationNodeType.MULTIPLY, optimized.getNodeType());
+        assertEquals(ComputationNodeType.NEGATE, optimized.getChildren().get(0).getNodeType());
+        assertSame(u, optimized.getChildren().get(0).getChildren().get(0));
+        assertSameResult(expected, optimized);
+
+        ComputationNode inner = op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.NEGATE, matrix(2, 50)), matrix(50, 2));
+        expected = eval(inner);
+        optimized = new TreeOptimizer().optimize(inner);
+        assertEquals(ComputationNodeType.NEGATE, optimized.getNodeType());
+        assertEquals(ComputationNodeType.MATRIX, optimized.getChildren().get(0).getChildren().get(0).getNodeType());
+        // zeros may come out with the other sign
+        double[][] actual = eval(optimized);
+        for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], actual[i], 0.0);
+    }
+
+    @Test
+    public void testOptimize_TransposeKept_Pass() {
+        // T(A * B) with a small product is cheaper to transpose directly
+        ComputationNode root = op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.MULTIPLY, matrix(2, 50), matrix(50, 2)));
+        double[][] expected = eval(root);
+        ComputationNode optimized = new TreeOptimizer().optimize(root);
+        assertEquals(ComputationNodeType.TRANSPOSE, optimized.getNodeType());
+        assertSameResult(expected, optimized);
+    }
+}
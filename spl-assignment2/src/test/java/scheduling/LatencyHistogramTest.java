@@ -0,0 +1,85 @@
+package scheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    // RECORD TESTS
+
+    @Test
+    public void testRecord_Small_Pass() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(5, histogram.getMax());
+        assertEquals(4.0, histogram.getMean());
+        // small values have exact buckets
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(5, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testRecord_Small_Fail() {
+        // nothing recorded, and negative durations count as zero
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+        histogram.record(-10);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testRecord_Mid_Pass() {
+        // 1..10000: every percentile is within one bucket (12.5%) of the exact value
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v);
+        }
+        for (double p : new double[]{10, 50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(p / 100 * 10_000);
+            long reported = histogram.getValueAtPercentile(p);
+            assertTrue(reported >= exact, p + ": " + reported + " < " + exact);
+            assertTrue(reported <= exact * 1.125 + 1, p + ": " + reported + " too far above " + exact);
+        }
+        assertEquals(10_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testRecord_Large_Pass() throws InterruptedException {
+        // concurrent writers lose nothing, and the largest values still have a bucket
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1000L);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(40_001, histogram.getCount());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    // BUCKET TESTS
+
+    @Test
+    public void testBuckets_Mid_Pass() {
+        // every value falls in the bucket whose range holds it
+        long[] values = {0, 7, 8, 15, 16, 17, 1000, 123_456_789L, Long.MAX_VALUE};
+        for (long v : values) {
+            int bucket = LatencyHistogram.bucketOf(v);
+            assertTrue(LatencyHistogram.lowestValueOf(bucket) <= v);
+            assertTrue(v <= LatencyHistogram.highestValueOf(bucket));
+        }
+    }
+}
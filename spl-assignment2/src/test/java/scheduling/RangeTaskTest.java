@@ -0,0 +1,82 @@
+package scheduling;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class RangeTaskTest {
+
+    // CHUNK SIZE TESTS
+
+    @Test
+    public void testChunkSize_Small_Pass() {
+        // a 10x10 add is not worth more than one task
+        assertEquals(10, RangeTask.chunkSize(10, 10, 4));
+        assertEquals(1, RangeTask.chunkSize(0, 10, 4));
+    }
+
+    @Test
+    public void testChunkSize_Small_Fail() {
+        // no workers or a zero cost still give a usable chunk
+        assertTrue(RangeTask.chunkSize(100, 0, 0) >= 1);
+        assertTrue(RangeTask.chunkSize(100, -5, -1) >= 1);
+    }
+
+    @Test
+    public void testChunkSize_Mid_Pass() {
+        // 10k rows of 10k elements over 4 workers: CHUNKS_PER_WORKER chunks each
+        int chunk = RangeTask.chunkSize(10_000, 10_000, 4);
+        assertEquals(625, chunk);
+    }
+
+    @Test
+    public void testChunkSize_Large_Pass() {
+        // short rows are grouped until a chunk is worth MIN_TASK_WORK operations
+        int chunk = RangeTask.chunkSize(1_000_000, 4, 64);
+        assertTrue(chunk * 4 >= RangeTask.MIN_TASK_WORK);
+        assertTrue(chunk < 1_000_000);
+    }
+
+    // SPLIT TESTS
+
+    @Test
+    public void testSplit_Small_Pass() {
+        int[] hits = new int[10];
+        List<Runnable> tasks = RangeTask.split(10, 3, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                hits[i]++;
+            }
+        });
+        assertEquals(4, tasks.size());
+        tasks.forEach(Runnable::run);
+        for (int hit : hits) {
+            assertEquals(1, hit);
+        }
+    }
+
+    @Test
+    public void testSplit_Small_Fail() {
+        assertThrows(IllegalArgumentException.class, () -> RangeTask.split(10, 0, (from, to) -> {}));
+        assertEquals(0, RangeTask.split(0, 5, (from, to) -> {}).size());
+    }
+
+    @Test
+    public void testSplit_Large_Pass() throws InterruptedException {
+        // chunks run through the executor, every index exactly once
+        int n = 100_000;
+        int[] hits = new int[n];
+        TiredExecutor pool = new TiredExecutor(4);
+        pool.submitAll(RangeTask.split(n, RangeTask.chunkSize(n, 1, 4), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                hits[i]++;
+            }
+        }));
+        pool.shutdown();
+        for (int hit : hits) {
+            assertEquals(1, hit);
+        }
+    }
+}
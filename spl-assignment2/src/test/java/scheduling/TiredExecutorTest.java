@@ -1,14 +1,20 @@
 package scheduling;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -126,6 +132,66 @@ public class TiredExecutorTest {
         pool.shutdown();
     }
 
+    @Test
+    public void testSubmit_Concurrent_Pass() throws InterruptedException {
+        // many submitters racing for few workers, each waiting submitter has to be woken up
+        TiredExecutor pool = new TiredExecutor(3);
+        AtomicInteger counter = new AtomicInteger(0);
+        Thread[] submitters = new Thread[8];
+        for (int t = 0; t < submitters.length; t++) {
+            submitters[t] = new Thread(() -> {
+                for (int i = 0; i < 300; i++) {
+                    pool.submit(counter::incrementAndGet);
+                }
+            });
+            submitters[t].start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join(10000);
+            assertTrue(!submitter.isAlive());
+        }
+        pool.shutdown();
+        assertEquals(2400, counter.get());
+    }
+
+    @Test
+    public void testSubmit_BlockedSubmitters_Pass() throws InterruptedException {
+        // every worker is busy and several submitters are parked, then the workers go idle
+        // together: each idle worker has to reach a submitter of its own
+        for (int round = 0; round < 20; round++) {
+            TiredExecutor pool = new TiredExecutor(3);
+            CountDownLatch gate = new CountDownLatch(1);
+            AtomicInteger counter = new AtomicInteger(0);
+            for (int i = 0; i < 3; i++) {
+                pool.submit(() -> {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Thread[] submitters = new Thread[6];
+            for (int t = 0; t < submitters.length; t++) {
+                submitters[t] = new Thread(() -> pool.submit(counter::incrementAndGet));
+                submitters[t].start();
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pool.waitingSubmitters() < submitters.length && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(submitters.length, pool.waitingSubmitters());
+            gate.countDown();
+            for (Thread submitter : submitters) {
+                submitter.join(10000);
+                assertTrue(!submitter.isAlive());
+            }
+            pool.shutdown();
+            assertEquals(submitters.length, counter.get());
+            assertEquals(0, pool.waitingSubmitters());
+        }
+    }
+
     // SUBMIT ALL TESTS
 
     @Test
@@ -187,6 +253,95 @@ public class TiredExecutorTest {
         pool.shutdown();
     }
 
+    // SUBMIT ALL ASYNC TESTS
+
+    @Test
+    public void testSubmitAllAsync_Small_Pass() throws Exception {
+        TiredExecutor pool = new TiredExecutor(2);
+        AtomicInteger counter = new AtomicInteger(0);
+        CompletableFuture<Void> done = pool.submitAllAsync(Arrays.asList(counter::incrementAndGet, counter::incrementAndGet));
+        done.get(5, TimeUnit.SECONDS);
+        assertEquals(2, counter.get());
+        assertTrue(pool.submitAllAsync(Collections.emptyList()).isDone());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllAsync_Small_Fail() throws Exception {
+        TiredExecutor pool = new TiredExecutor(1);
+        CompletableFuture<Void> done = pool.submitAllAsync(Arrays.asList(() -> {
+            throw new IllegalStateException("Crash!");
+        }, () -> {}));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        // the pool keeps working after a failed batch
+        CountDownLatch latch = new CountDownLatch(1);
+        pool.submitAllAsync(Collections.singletonList(latch::countDown));
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllAsync_Error_Fail() throws Exception {
+        // a worker that hit an Error is not handed more work, the other one runs it
+        TiredExecutor pool = new TiredExecutor(2);
+        CompletableFuture<Void> failed = pool.submitAllAsync(Collections.singletonList(() -> {
+            throw new InternalError("Crash!");
+        }));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof InternalError);
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) tasks.add(counter::incrementAndGet);
+        pool.submitAllAsync(tasks).get(5, TimeUnit.SECONDS);
+        assertEquals(20, counter.get());
+        pool.shutdown();
+
+        // with no worker left, the task still waiting fails instead of hanging
+        TiredExecutor single = new TiredExecutor(1);
+        assertThrows(InternalError.class, () -> single.submitAll(Arrays.asList(() -> {
+            throw new InternalError("Crash!");
+        }, counter::incrementAndGet)));
+        assertEquals(20, counter.get());
+        single.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllAsync_Mid_Pass() throws Exception {
+        // batches complete on their own, a quick batch does not wait for a slow one
+        TiredExecutor pool = new TiredExecutor(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> slow = pool.submitAllAsync(Collections.singletonList(() -> {
+            try { release.await(5, TimeUnit.SECONDS); } catch (InterruptedException e) {}
+        }));
+        CompletableFuture<Void> quick = pool.submitAllAsync(Collections.singletonList(() -> {}));
+        quick.get(5, TimeUnit.SECONDS);
+        assertTrue(!slow.isDone());
+        release.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSubmitAllAsync_Large_Pass() throws Exception {
+        // more tasks than workers are queued without blocking the caller, in both modes
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            TiredExecutor pool = new TiredExecutor(4, mode);
+            AtomicInteger counter = new AtomicInteger(0);
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int b = 0; b < 50; b++) {
+                List<Runnable> tasks = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    tasks.add(counter::incrementAndGet);
+                }
+                batches.add(pool.submitAllAsync(tasks));
+            }
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+            assertEquals(5000, counter.get());
+            pool.shutdown();
+        }
+    }
+
     // SHUTDOWN TESTS
 
     @Test
@@ -286,4 +441,153 @@ public class TiredExecutorTest {
         assertTrue(r.length() > 1000);
         pool.shutdown();
     }
-}
\ No newline at end of file
+
+    // WORKER METRICS TESTS
+
+    @Test
+    public void testWorkerMetrics_Small_Pass() throws InterruptedException {
+        TiredExecutor pool = new TiredExecutor(2);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> {});
+        }
+        tasks.add(() -> { throw new RuntimeException("Crash!"); });
+        pool.submitAll(tasks);
+        pool.shutdown();
+
+        List<WorkerMetrics> metrics = pool.getWorkerMetrics();
+        assertEquals(2, metrics.size());
+        long total = 0;
+        long failed = 0;
+        long waits = 0;
+        for (WorkerMetrics m : metrics) {
+            total += m.getTaskCount();
+            failed += m.getFailedTasks();
+            waits += m.getQueueWait().getCount();
+            assertEquals(m.getTaskCount(), m.getRunTime().getCount());
+        }
+        assertEquals(11, total);
+        assertEquals(1, failed);
+        assertEquals(11, waits);
+    }
+
+    @Test
+    public void testWorkerMetrics_Small_Fail() throws InterruptedException {
+        // a worker that never ran anything has empty metrics
+        TiredExecutor pool = new TiredExecutor(1);
+        WorkerMetrics m = pool.getWorkerMetrics().get(0);
+        assertEquals(0, m.getTaskCount());
+        assertEquals(0, m.getQueueWaitP99());
+        assertEquals(0, m.getFatigueHistory().length);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWorkerMetrics_Mid_Pass() throws InterruptedException {
+        // fatigue samples are ordered in time and never go down
+        TiredExecutor pool = new TiredExecutor(1);
+        for (int round = 0; round < 5; round++) {
+            pool.submitAll(Collections.singletonList(() -> {
+                try { Thread.sleep(2); } catch (InterruptedException e) {}
+            }));
+        }
+        pool.shutdown();
+        double[][] history = pool.getWorkerMetrics().get(0).getFatigueHistory();
+        assertTrue(history.length >= 2);
+        for (int i = 1; i < history.length; i++) {
+            assertTrue(history[i][0] >= history[i - 1][0]);
+            assertTrue(history[i][1] >= history[i - 1][1]);
+        }
+        assertTrue(pool.getWorkerMetrics().get(0).getRunTimeP50() >= 1_000_000);
+    }
+
+    @Test
+    public void testWorkerMetrics_MBeans_Pass() throws Exception {
+        TiredExecutor pool = new TiredExecutor(2);
+        pool.registerMBeans("metrics-test");
+        pool.submitAll(Collections.singletonList(() -> {}));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("scheduling:type=TiredExecutor,name=\"metrics-test\",worker=1");
+        assertTrue(server.isRegistered(name));
+        Object tasks = server.getAttribute(name, "TaskCount");
+        assertTrue(tasks instanceof Long);
+        pool.shutdown();
+        assertTrue(!server.isRegistered(name));
+    }
+
+    // WORK STEALING TESTS
+
+    @Test
+    public void testWorkStealing_Small_Pass() throws InterruptedException {
+        TiredExecutor pool = new TiredExecutor(2, SchedulingMode.WORK_STEALING);
+        assertEquals(SchedulingMode.WORK_STEALING, pool.getMode());
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        pool.submitAll(tasks);
+        assertEquals(5, counter.get());
+        pool.submit(counter::incrementAndGet);
+        pool.submitAll(Collections.emptyList());
+        pool.shutdown();
+        assertEquals(6, counter.get());
+    }
+
+    @Test
+    public void testWorkStealing_Small_Fail() throws InterruptedException {
+        assertThrows(IllegalArgumentException.class, () -> new TiredExecutor(1, null));
+        TiredExecutor empty = new TiredExecutor(0, SchedulingMode.WORK_STEALING);
+        assertThrows(IllegalStateException.class, () -> empty.submit(() -> {}));
+        empty.shutdown();
+
+        // a failing task does not break the pool
+        TiredExecutor pool = new TiredExecutor(2, SchedulingMode.WORK_STEALING);
+        AtomicInteger counter = new AtomicInteger(0);
+        assertDoesNotThrow(() -> pool.submitAll(Arrays.asList(counter::incrementAndGet, null, counter::incrementAndGet)));
+        assertEquals(2, counter.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWorkStealing_Mid_Pass() throws InterruptedException {
+        // one batch starts with a slow task, the other worker steals the rest of that batch meanwhile
+        TiredExecutor pool = new TiredExecutor(2, SchedulingMode.WORK_STEALING);
+        AtomicInteger counter = new AtomicInteger(0);
+        AtomicBoolean othersDone = new AtomicBoolean(false);
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            try { Thread.sleep(300); } catch (Exception e) {}
+            othersDone.set(counter.get() == 39);
+            counter.incrementAndGet();
+        });
+        for (int i = 0; i < 39; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        pool.submitAll(tasks);
+        assertEquals(40, counter.get());
+        assertTrue(othersDone.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWorkStealing_Large_Pass() throws InterruptedException {
+        TiredExecutor pool = new TiredExecutor(8, SchedulingMode.WORK_STEALING);
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int round = 0; round < 20; round++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                tasks.add(counter::incrementAndGet);
+            }
+            pool.submitAll(tasks);
+            assertEquals((round + 1) * 500, counter.get());
+        }
+        // tasks submitted before shutdown still run
+        for (int i = 0; i < 100; i++) {
+            pool.submit(counter::incrementAndGet);
+        }
+        pool.shutdown();
+        assertEquals(10100, counter.get());
+        assertTrue(pool.getWorkerReport().contains("Worker 7"));
+    }
+}
@@ -526,4 +526,53 @@ public class TiredThreadTest {
         assertEquals(t2, list.get(0));
         assertEquals(t1, list.get(1));
     }
-}
\ No newline at end of file
+
+    // WORK STEALING TESTS
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testWorkStealing_IdleWorkersSleep_Pass() throws InterruptedException {
+        // idle workers sleep without a timeout, a batch left behind by a busy worker wakes the other one
+        TiredThread[] group = {new TiredThread(0, 1.0), new TiredThread(1, 1.0)};
+        for (TiredThread worker : group) {
+            worker.enableWorkStealing(group, () -> 0.0);
+            worker.start();
+        }
+        for (TiredThread worker : group) {
+            awaitState(worker, Thread.State.WAITING);
+            assertEquals(Thread.State.WAITING, worker.getState());
+        }
+
+        CountDownLatch stolen = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        List<Runnable> batch = new ArrayList<>();
+        batch.add(() -> {
+            try {
+                // only the other worker can run the second task while this one waits
+                if (stolen.await(5, TimeUnit.SECONDS)) {
+                    finished.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        batch.add(stolen::countDown);
+        group[0].pushTasks(batch);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(1, group[1].getStolenTasks());
+
+        for (TiredThread worker : group) {
+            worker.shutdown();
+        }
+        for (TiredThread worker : group) {
+            worker.join(5000);
+            assertFalse(worker.isAlive());
+        }
+    }
+}
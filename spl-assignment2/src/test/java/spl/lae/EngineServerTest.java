@@ -0,0 +1,212 @@
+package spl.lae;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import parser.OutputWriter;
+
+public class EngineServerTest {
+
+    private LinearAlgebraEngine engine;
+    private EngineServer server;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        engine = new LinearAlgebraEngine(4);
+        server = new EngineServer(engine, 4, OutputWriter.Format.COMPACT, false);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.close();
+        engine.getExecutor().shutdown();
+    }
+
+    private Path job(String name, String json) throws Exception {
+        Path input = tempDir.resolve(name);
+        Files.writeString(input, json);
+        return input;
+    }
+
+    private static SocketChannel connect(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socketPath));
+        return channel;
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(file) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    // SUBMIT TESTS
+
+    @Test
+    public void testSubmit_Small_Pass() throws Exception {
+        Path input = job("neg.json", "{\"operator\": \"-\", \"operands\": [[[1.0, 2.0], [3.0, 4.0]]]}");
+        Path output = tempDir.resolve("neg.out.json");
+        server.submit(input.toString(), output.toString()).join();
+        assertEquals("{\"result\":[\n[-1.0,-2.0],\n[-3.0,-4.0]\n]}\n", Files.readString(output));
+        assertEquals(1, server.getCompletedJobs());
+    }
+
+    @Test
+    public void testSubmit_Small_Fail() throws Exception {
+        // the error goes to the output file, as with Main, and fails the future
+        Path input = job("bad.json", "{\"operator\": \"+\", \"operands\": [[[1.0]], [[1.0, 2.0]]]}");
+        Path output = tempDir.resolve("bad.out.json");
+        CompletableFuture<Void> done = server.submit(input.toString(), output.toString());
+        assertThrows(CompletionException.class, done::join);
+        assertTrue(Files.readString(output).contains("\"error\""));
+        assertEquals(1, server.getFailedJobs());
+
+        server.close();
+        assertThrows(IllegalStateException.class, () -> server.submit(input.toString(), output.toString()));
+        assertThrows(IllegalArgumentException.class, () -> new EngineServer(engine, 0, OutputWriter.Format.PRETTY, false));
+    }
+
+    @Test
+    public void testSubmit_Concurrent_Pass() throws Exception {
+        // the jobs share the workers but not their operands
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String json = "{\"operator\": \"*\", \"operands\": [[[" + i + ".0, 1.0]], [[2.0], [" + i + ".0]]]}";
+            Path input = job("job" + i + ".json", json);
+            done.add(server.submit(input.toString(), tempDir.resolve("job" + i + ".out.json").toString()));
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+        for (int i = 0; i < 40; i++) {
+            assertEquals("{\"result\":[\n[" + (3.0 * i) + "]\n]}\n", Files.readString(tempDir.resolve("job" + i + ".out.json")));
+        }
+        assertEquals(40, server.getCompletedJobs());
+    }
+
+    @Test
+    public void testSubmit_ChainPlans_Pass() throws Exception {
+        // the chosen multiply order goes to the job's metrics instead of the server's stdout
+        Path input = job("chain.json", "{\"operator\": \"*\", \"operands\": [[[1], [2], [3]], [[1, 2, 3]], [[1], [1], [1]]]}");
+        Path output = tempDir.resolve("chain.out.json");
+        java.io.PrintStream stdout = System.out;
+        java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+        try (EngineServer metricsServer = new EngineServer(engine, 1, OutputWriter.Format.COMPACT, true)) {
+            System.setOut(new java.io.PrintStream(captured));
+            metricsServer.submit(input.toString(), output.toString()).join();
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("{\"result\":[\n[6.0],\n[12.0],\n[18.0]\n]}\n", Files.readString(output));
+        assertFalse(captured.toString().contains("Multiply order"));
+        String metrics = Files.readString(tempDir.resolve("chain.out.json" + Main.METRICS_SUFFIX));
+        assertTrue(metrics.contains("\"chainPlans\""));
+        assertTrue(metrics.contains("\"leftToRightFlops\" : 36"));
+    }
+
+    // SOCKET TESTS
+
+    @Test
+    public void testServeSocket_Pass() throws Exception {
+        Path input = job("t.json", "{\"operator\": \"T\", \"operands\": [[[1.0, 2.0]]]}");
+        Path output = tempDir.resolve("t.out.json");
+        Path socketPath = tempDir.resolve("run/lae.sock");
+        server.serveSocket(socketPath);
+        // created for the owner only
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socketPath.getParent())));
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(10), () -> {
+            try (SocketChannel socket = connect(socketPath);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(socket), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(Channels.newOutputStream(socket), true, StandardCharsets.UTF_8)) {
+                out.println(input + "\t" + output);
+                assertEquals("OK " + output, in.readLine());
+                assertEquals("{\"result\":[\n[1.0],\n[2.0]\n]}\n", Files.readString(output));
+
+                out.println("SHUTDOWN");
+                assertEquals("OK", in.readLine());
+            }
+            server.awaitClose();
+        });
+        assertFalse(Files.exists(socketPath));
+    }
+
+    @Test
+    public void testServeSocket_Fail() throws Exception {
+        Path input = job("bad.json", "{\"operator\": \"*\", \"operands\": [[[1.0, 2.0]], [[1.0, 2.0]]]}");
+        Path socketPath = tempDir.resolve("run/lae.sock");
+        server.serveSocket(socketPath);
+        try (SocketChannel socket = connect(socketPath);
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(socket), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(Channels.newOutputStream(socket), true, StandardCharsets.UTF_8)) {
+            out.println("just-one-path");
+            assertTrue(in.readLine().startsWith("ERROR expected"));
+            out.println(input + " " + tempDir.resolve("bad.out.json"));
+            assertTrue(in.readLine().startsWith("ERROR "));
+        }
+        assertEquals(1, server.getFailedJobs());
+
+        // a directory others may enter is refused
+        Path shared = Files.createDirectories(tempDir.resolve("shared"));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxr-xr-x"));
+        assertThrows(IOException.class, () -> server.serveSocket(shared.resolve("lae.sock")));
+    }
+
+    // SPOOL DIRECTORY TESTS
+
+    @Test
+    public void testServeDirectory_Pass() throws Exception {
+        Path spool = tempDir.resolve("spool");
+        Files.createDirectories(spool.resolve(EngineServer.IN_DIR));
+        // already waiting when the server starts
+        Files.writeString(spool.resolve("in/first.json"), "[[1.0, 2.0]]");
+        server.serveDirectory(spool);
+
+        Path staged = job("second.json", "{\"operator\": \"+\", \"operands\": [[[1.0]], [[2.0]]]}");
+        Files.move(staged, spool.resolve("in/second.json"), StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(spool.resolve("in/.hidden.json"), "[[1.0]]");
+
+        awaitFile(spool.resolve("out/first.json"));
+        awaitFile(spool.resolve("out/second.json"));
+        assertEquals("{\"result\":[\n[1.0,2.0]\n]}\n", Files.readString(spool.resolve("out/first.json")));
+        assertEquals("{\"result\":[\n[3.0]\n]}\n", Files.readString(spool.resolve("out/second.json")));
+        server.close();
+        assertTrue(Files.exists(spool.resolve("done/second.json")));
+        assertFalse(Files.exists(spool.resolve("in/second.json")));
+        assertTrue(Files.exists(spool.resolve("in/.hidden.json")));
+    }
+
+    @Test
+    public void testIsJobFile_Small_Pass() {
+        assertTrue(EngineServer.isJobFile("a.json"));
+        assertTrue(EngineServer.isJobFile("a.laeb"));
+        assertFalse(EngineServer.isJobFile(".a.json"));
+        assertFalse(EngineServer.isJobFile("a.json.tmp"));
+    }
+}
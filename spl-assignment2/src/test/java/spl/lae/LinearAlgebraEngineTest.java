@@ -1,30 +1,40 @@
 package spl.lae;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import memory.SharedMatrix;
+import memory.VectorOrientation;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import parser.EvaluationPlan;
+import scheduling.SchedulingMode;
 
 public class LinearAlgebraEngineTest {
 
     private LinearAlgebraEngine engine;
+    private SharedMatrix left;
+    private SharedMatrix right;
 
     @BeforeEach
     public void setUp() {
         engine = new LinearAlgebraEngine(4);
+        left = new SharedMatrix();
+        right = new SharedMatrix();
     }
 
     @AfterEach
@@ -34,21 +44,15 @@ public class LinearAlgebraEngineTest {
         }
     }
 
-    // HELPER: REFLECTION FOR PRIVATE STATE
-    private void injectLeftMatrix(double[][] data) throws Exception {
-        Field f = LinearAlgebraEngine.class.getDeclaredField("leftMatrix");
-        f.setAccessible(true);
-        SharedMatrix m = (SharedMatrix) f.get(engine);
-        if (data == null || data.length == 0) return; 
-        m.loadRowMajor(data);
+    // HELPER: OPERANDS FOR THE TASK FACTORIES
+    private void injectLeftMatrix(double[][] data) {
+        if (data == null || data.length == 0) return;
+        left.loadRowMajor(data);
     }
 
-    private void injectRightMatrix(double[][] data) throws Exception {
-        Field f = LinearAlgebraEngine.class.getDeclaredField("rightMatrix");
-        f.setAccessible(true);
-        SharedMatrix m = (SharedMatrix) f.get(engine);
+    private void injectRightMatrix(double[][] data) {
         if (data == null || data.length == 0) return;
-        m.loadRowMajor(data);
+        right.loadRowMajor(data);
     }
 
     // CONSTRUCTOR TESTS
@@ -89,7 +93,7 @@ public class LinearAlgebraEngineTest {
     public void testCreateAddTasks_Small_Pass() throws Exception {
         injectLeftMatrix(new double[][]{{1}});
         injectRightMatrix(new double[][]{{2}});
-        List<Runnable> tasks = engine.createAddTasks();
+        List<Runnable> tasks = engine.createAddTasks(left, right);
         assertEquals(1, tasks.size());
     }
 
@@ -97,7 +101,7 @@ public class LinearAlgebraEngineTest {
     public void testCreateAddTasks_Small_Fail() throws Exception {
         injectLeftMatrix(new double[][]{{1}});
         injectRightMatrix(new double[][]{{1, 2}});
-        assertThrows(IllegalArgumentException.class, () -> engine.createAddTasks());
+        assertThrows(IllegalArgumentException.class, () -> engine.createAddTasks(left, right));
     }
 
     @Test
@@ -105,7 +109,7 @@ public class LinearAlgebraEngineTest {
         double[][] data = new double[50][50];
         injectLeftMatrix(data);
         injectRightMatrix(data);
-        List<Runnable> tasks = engine.createAddTasks();
+        List<Runnable> tasks = engine.createAddTasks(left, right);
         assertEquals(50, tasks.size());
     }
 
@@ -113,14 +117,14 @@ public class LinearAlgebraEngineTest {
     public void testCreateAddTasks_Mid_Fail() throws Exception {
         injectLeftMatrix(new double[10][5]);
         injectRightMatrix(new double[5][5]);
-        assertThrows(IllegalArgumentException.class, () -> engine.createAddTasks());
+        assertThrows(IllegalArgumentException.class, () -> engine.createAddTasks(left, right));
     }
 
     @Test
     public void testCreateAddTasks_Large_Pass() throws Exception {
         injectLeftMatrix(new double[1000][1]);
         injectRightMatrix(new double[1000][1]);
-        List<Runnable> tasks = engine.createAddTasks();
+        List<Runnable> tasks = engine.createAddTasks(left, right);
         assertEquals(1000, tasks.size());
     }
 
@@ -130,7 +134,7 @@ public class LinearAlgebraEngineTest {
     public void testCreateMultiplyTasks_Small_Pass() throws Exception {
         injectLeftMatrix(new double[][]{{1, 2}});
         injectRightMatrix(new double[][]{{3}, {4}});
-        List<Runnable> tasks = engine.createMultiplyTasks();
+        List<Runnable> tasks = engine.createMultiplyTasks(left, right, new double[1][1]);
         assertEquals(1, tasks.size());
     }
 
@@ -138,30 +142,110 @@ public class LinearAlgebraEngineTest {
     public void testCreateMultiplyTasks_Small_Fail() throws Exception {
         injectLeftMatrix(new double[][]{{1, 2}});
         injectRightMatrix(new double[][]{{1}, {2}, {3}});
-        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks());
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(left, right, new double[1][1]));
     }
 
     @Test
     public void testCreateMultiplyTasks_Mid_Pass() throws Exception {
         injectLeftMatrix(new double[10][10]);
         injectRightMatrix(new double[10][10]);
-        List<Runnable> tasks = engine.createMultiplyTasks();
-        assertEquals(10, tasks.size());
+        List<Runnable> tasks = engine.createMultiplyTasks(left, right, new double[10][10]);
+        assertEquals(1, tasks.size());
     }
 
     @Test
     public void testCreateMultiplyTasks_Mid_Fail() throws Exception {
         injectLeftMatrix(new double[10][5]);
         injectRightMatrix(new double[4][10]);
-        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks());
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(left, right, new double[10][10]));
     }
 
     @Test
     public void testCreateMultiplyTasks_Large_Pass() throws Exception {
         injectLeftMatrix(new double[500][5]);
         injectRightMatrix(new double[5][500]);
-        List<Runnable> tasks = engine.createMultiplyTasks();
-        assertEquals(500, tasks.size());
+        List<Runnable> tasks = engine.createMultiplyTasks(left, right, new double[500][500]);
+        // one task per 64x64 output tile
+        assertEquals(8 * 8, tasks.size());
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_CustomTile_Pass() throws Exception {
+        LinearAlgebraEngine tiled = new LinearAlgebraEngine(2, 4);
+        try {
+            injectLeftMatrix(new double[10][3]);
+            injectRightMatrix(new double[3][7]);
+            assertEquals(3 * 2, tiled.createMultiplyTasks(left, right, new double[10][7]).size());
+        } finally {
+            tiled.getExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_Output_Pass() throws Exception {
+        // running the tasks fills the caller's output with the product
+        injectLeftMatrix(new double[][]{{1, 2}, {3, 4}});
+        injectRightMatrix(new double[][]{{5, 6, 7}, {8, 9, 10}});
+        double[][] out = new double[2][3];
+        for (Runnable task : engine.createMultiplyTasks(left, right, out)) {
+            task.run();
+        }
+        assertArrayEquals(new double[]{21, 24, 27}, out[0], 0.0);
+        assertArrayEquals(new double[]{47, 54, 61}, out[1], 0.0);
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_Output_Fail() throws Exception {
+        injectLeftMatrix(new double[][]{{1, 2}, {3, 4}});
+        injectRightMatrix(new double[][]{{5, 6, 7}, {8, 9, 10}});
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(left, right, new double[2][2]));
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(left, right, null));
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_Reused_Pass() throws Exception {
+        // an output left over from another product is overwritten, not added to
+        injectLeftMatrix(new double[][]{{1, 2}, {3, 4}});
+        injectRightMatrix(new double[][]{{5, 6, 7}, {8, 9, 10}});
+        double[][] out = {{1, 1, 1}, {-1, -1, -1}};
+        for (Runnable task : engine.createMultiplyTasks(left, right, out)) {
+            task.run();
+        }
+        assertArrayEquals(new double[]{21, 24, 27}, out[0], 0.0);
+        assertArrayEquals(new double[]{47, 54, 61}, out[1], 0.0);
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_ColumnMajorLeft_Fail() throws Exception {
+        left.loadColumnMajor(new double[][]{{1, 2}, {3, 4}});
+        injectRightMatrix(new double[][]{{5, 6}, {7, 8}});
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(left, right, new double[2][2]));
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_CustomTile_Fail() {
+        assertThrows(IllegalArgumentException.class, () -> new LinearAlgebraEngine(1, 0));
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_RightTransposedOnce_Pass() throws Exception {
+        injectLeftMatrix(new double[][]{{1, 2}, {3, 4}});
+        injectRightMatrix(new double[][]{{5, 6, 7}, {8, 9, 10}});
+        OperandContext context = new OperandContext(null, left, right);
+        engine.createMultiplyTasks(context);
+        assertEquals(VectorOrientation.COLUMN_MAJOR, context.right.getOrientation());
+        assertEquals(3, context.right.length());
+        assertEquals(8.0, context.right.get(0).get(1));
+    }
+
+    @Test
+    public void testCreateMultiplyTasks_RightTransposedOnce_Fail() throws Exception {
+        injectLeftMatrix(new double[][]{{1, 2, 3}});
+        injectRightMatrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        OperandContext context = new OperandContext(null, left, right);
+        assertThrows(IllegalArgumentException.class, () -> engine.createMultiplyTasks(context));
+        assertSame(right, context.right);
+        assertEquals(VectorOrientation.ROW_MAJOR, right.getOrientation());
     }
 
     // CREATE NEGATE TASKS TESTS
@@ -169,21 +253,21 @@ public class LinearAlgebraEngineTest {
     @Test
     public void testCreateNegateTasks_Small_Pass() throws Exception {
         injectLeftMatrix(new double[][]{{1}});
-        List<Runnable> tasks = engine.createNegateTasks();
+        List<Runnable> tasks = engine.createNegateTasks(left);
         assertEquals(1, tasks.size());
     }
 
     @Test
     public void testCreateNegateTasks_Small_Fail() throws Exception {
         injectLeftMatrix(new double[0][0]);
-        List<Runnable> tasks = engine.createNegateTasks();
+        List<Runnable> tasks = engine.createNegateTasks(left);
         assertEquals(0, tasks.size());
     }
 
     @Test
     public void testCreateNegateTasks_Mid_Pass() throws Exception {
         injectLeftMatrix(new double[50][10]);
-        List<Runnable> tasks = engine.createNegateTasks();
+        List<Runnable> tasks = engine.createNegateTasks(left);
         assertEquals(50, tasks.size());
     }
 
@@ -191,13 +275,13 @@ public class LinearAlgebraEngineTest {
     public void testCreateNegateTasks_Mid_Fail() throws Exception {
         injectLeftMatrix(new double[10][10]);
         injectRightMatrix(new double[5][5]); 
-        assertDoesNotThrow(() -> engine.createNegateTasks());
+        assertDoesNotThrow(() -> engine.createNegateTasks(left));
     }
 
     @Test
     public void testCreateNegateTasks_Large_Pass() throws Exception {
         injectLeftMatrix(new double[1000][1]);
-        assertEquals(1000, engine.createNegateTasks().size());
+        assertEquals(1000, engine.createNegateTasks(left).size());
     }
 
     // CREATE TRANSPOSE TASKS TESTS
@@ -205,31 +289,31 @@ public class LinearAlgebraEngineTest {
     @Test
     public void testCreateTransposeTasks_Small_Pass() throws Exception {
         injectLeftMatrix(new double[][]{{1}});
-        assertEquals(1, engine.createTransposeTasks().size());
+        assertEquals(1, engine.createTransposeTasks(left).size());
     }
 
     @Test
     public void testCreateTransposeTasks_Small_Fail() throws Exception {
         injectLeftMatrix(new double[0][0]);
-        assertEquals(0, engine.createTransposeTasks().size());
+        assertEquals(0, engine.createTransposeTasks(left).size());
     }
 
     @Test
     public void testCreateTransposeTasks_Mid_Pass() throws Exception {
         injectLeftMatrix(new double[50][50]);
-        assertEquals(50, engine.createTransposeTasks().size());
+        assertEquals(50, engine.createTransposeTasks(left).size());
     }
 
     @Test
     public void testCreateTransposeTasks_Mid_Fail() throws Exception {
         injectLeftMatrix(new double[1][100]);
-        assertDoesNotThrow(() -> engine.createTransposeTasks());
+        assertDoesNotThrow(() -> engine.createTransposeTasks(left));
     }
 
     @Test
     public void testCreateTransposeTasks_Large_Pass() throws Exception {
         injectLeftMatrix(new double[1000][5]);
-        assertEquals(1000, engine.createTransposeTasks().size());
+        assertEquals(1000, engine.createTransposeTasks(left).size());
     }
 
     // GET WORKER REPORT TESTS
@@ -261,6 +345,67 @@ public class LinearAlgebraEngineTest {
         try { big.getExecutor().shutdown(); } catch (Exception e) {}
     }
 
+    // METRICS TESTS
+
+    @Test
+    public void testGetMetrics_Small_Pass() {
+        // (2x3 * 3x2) then a fused -(P + T(P')) region on top
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2, 3}, {4, 5, 6}}),
+                new ComputationNode(new double[][]{{1, 0}, {0, 1}, {1, 1}})));
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(ComputationNodeType.ADD, Arrays.asList(product,
+                        new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                                new ComputationNode(new double[][]{{1, 2}, {3, 4}})))))));
+        engine.run(root);
+
+        List<NodeMetrics> nodes = engine.getMetrics().getNodes();
+        assertEquals(2, nodes.size());
+        NodeMetrics multiply = nodes.get(0);
+        assertEquals(ComputationNodeType.MULTIPLY, multiply.getOperator());
+        assertFalse(multiply.isFused());
+        assertArrayEquals(new int[]{2, 3}, multiply.getOperandShapes().get(0));
+        assertArrayEquals(new int[]{2, 2}, multiply.getResultShape());
+        assertEquals(2 * 2 * 3 * 2, multiply.getFlops());
+        assertTrue(multiply.getTaskCount() > 0);
+        assertTrue(multiply.getComputeNanos() > 0);
+
+        NodeMetrics fused = nodes.get(1);
+        assertEquals(ComputationNodeType.NEGATE, fused.getOperator());
+        assertTrue(fused.isFused());
+        assertEquals(2, fused.getOperandShapes().size());
+        // one addition and one negation of the sum per element
+        assertEquals(2 * 4, fused.getFlops());
+        assertEquals(24 + 8, engine.getMetrics().getTotalFlops());
+        assertNotNull(engine.getMetrics().getSlowest());
+    }
+
+    @Test
+    public void testGetMetrics_Small_Fail() {
+        // a fresh run starts fresh metrics, nodes that never resolved are not in them
+        engine.run(new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(new double[][]{{1}}))));
+        assertEquals(1, engine.getMetrics().getNodes().size());
+        ComputationNode bad = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{1, 2}})));
+        assertThrows(IllegalArgumentException.class, () -> engine.run(bad));
+        assertEquals(0, engine.getMetrics().getNodes().size());
+    }
+
+    @Test
+    public void testGetMetrics_Snapshot_Pass() {
+        // the node list is a copy, later runs into the same metrics do not change it
+        EngineMetrics metrics = new EngineMetrics();
+        engine.run(new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(new double[][]{{1}}))), metrics);
+        List<NodeMetrics> before = metrics.getNodes();
+        engine.run(new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(new double[][]{{2}}))), metrics);
+        assertEquals(1, before.size());
+        assertEquals(2, metrics.getNodes().size());
+        assertThrows(UnsupportedOperationException.class, () -> before.add(before.get(0)));
+    }
+
     // RUN & LOAD_AND_COMPUTE TESTS
 
     @Test
@@ -304,6 +449,347 @@ public class LinearAlgebraEngineTest {
         ComputationNode root = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(l1, l2));
         
         assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+        ComputationNode transpose = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(d1), new ComputationNode(d1)));
+        assertThrows(IllegalArgumentException.class, () -> engine.run(transpose));
+    }
+
+    @Test
+    public void testRun_Multiply_Pass() {
+        ComputationNode l1 = new ComputationNode(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        ComputationNode l2 = new ComputationNode(new double[][]{{7, 8, 9}, {10, 11, 12}});
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(l1, l2));
+
+        engine.run(root);
+
+        double[][] res = root.getMatrix();
+        assertEquals(3, res.length);
+        assertEquals(3, res[0].length);
+        assertEquals(27.0, res[0][0]);
+        assertEquals(30.0, res[0][1]);
+        assertEquals(117.0, res[2][2]);
+    }
+
+    @Test
+    public void testRun_Multiply_Large_Pass() throws Exception {
+        // several tiles in each direction and more than one depth block
+        Random rnd = new Random(7);
+        double[][] a = new double[70][300];
+        double[][] b = new double[300][45];
+        for (double[] row : a) for (int j = 0; j < row.length; j++) row[j] = rnd.nextInt(10) - 5;
+        for (double[] row : b) for (int j = 0; j < row.length; j++) row[j] = rnd.nextInt(10) - 5;
+        double[][] expected = new double[70][45];
+        for (int i = 0; i < 70; i++)
+            for (int j = 0; j < 45; j++)
+                for (int k = 0; k < 300; k++) expected[i][j] += a[i][k] * b[k][j];
+
+        LinearAlgebraEngine tiled = new LinearAlgebraEngine(3, 16);
+        try {
+            ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY,
+                    Arrays.asList(new ComputationNode(a), new ComputationNode(b)));
+            tiled.run(root);
+            double[][] res = root.getMatrix();
+            for (int i = 0; i < 70; i++) {
+                assertArrayEquals(expected[i], res[i]);
+            }
+        } finally {
+            tiled.getExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testRun_IndependentSubtrees_Pass() {
+        // (A*B) + (C*D) and -(E): both products are computed in the same batch
+        ComputationNode ab = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3}, {4}})));
+        ComputationNode cd = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{2}}), new ComputationNode(new double[][]{{5}})));
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(ab, cd));
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(sum));
+
+        assertEquals(2, new EvaluationPlan(root, true).takeReady().size());
+        engine.run(root);
+
+        assertEquals(-21.0, root.getMatrix()[0][0]);
+    }
+
+    @Test
+    public void testRun_IndependentSubtrees_Fail() {
+        ComputationNode good = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(new double[][]{{1}})));
+        ComputationNode bad = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{1, 2}})));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(good, bad));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+    }
+
+    @Test
+    public void testRun_LongChain_Pass() {
+        ComputationNode root = new ComputationNode(new double[][]{{0}});
+        for (int i = 0; i < 2000; i++) {
+            root = new ComputationNode(ComputationNodeType.ADD,
+                    Arrays.asList(root, new ComputationNode(new double[][]{{1}})));
+        }
+        engine.run(root);
+        assertEquals(2000.0, root.getMatrix()[0][0]);
+    }
+
+    @Test
+    public void testRun_SingleOperand_Pass() {
+        // a product or sum of one matrix is that matrix, whatever the engine computed before
+        engine.run(new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}}), new ComputationNode(new double[][]{{3}, {4}}))));
+        double[][] a = {{1, 2}, {3, 4}};
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(a)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(product));
+
+        engine.run(root);
+
+        assertSame(a, root.getMatrix());
+    }
+
+    @Test
+    public void testRun_ZeroCopy_Pass() {
+        // the sum is written into the first operand's rows, which become the result as they are
+        double[][] a = {{1, 2}, {3, 4}};
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                new ComputationNode(a), new ComputationNode(new double[][]{{1, 1}, {1, 1}})));
+
+        engine.run(root);
+
+        assertSame(a[0], root.getMatrix()[0]);
+        assertArrayEquals(new double[]{4, 5}, root.getMatrix()[1]);
+    }
+
+    @Test
+    public void testRun_TransposedView_Pass() {
+        // T(T(A)) moves no data at all
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        ComputationNode inner = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(a)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(inner));
+
+        engine.loadAndCompute(inner);
+        assertTrue(inner.isTransposedView());
+        assertSame(a, inner.getStoredMatrix());
+        engine.run(root);
+
+        assertFalse(root.isTransposedView());
+        assertSame(a, root.getMatrix());
+    }
+
+    @Test
+    public void testRun_TransposedView_Mid_Pass() {
+        // A * T(B), -T(C) + D and T(C) + T(C'): views consumed by multiply, fused and plain kernels
+        double[][] b = {{1, 2}, {3, 4}, {5, 6}};
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 0}, {0, 1}}),
+                new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(new ComputationNode(b)))));
+        engine.run(product);
+        assertArrayEquals(new double[]{1, 3, 5}, product.getMatrix()[0]);
+        assertArrayEquals(new double[]{2, 4, 6}, product.getMatrix()[1]);
+
+        ComputationNode tc = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}, {3, 4}})));
+        engine.loadAndCompute(tc);
+        ComputationNode mixed = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(tc)),
+                new ComputationNode(new double[][]{{10, 10}, {10, 10}})));
+        engine.run(mixed);
+        assertArrayEquals(new double[]{9, 7}, mixed.getMatrix()[0]);
+        assertArrayEquals(new double[]{8, 6}, mixed.getMatrix()[1]);
+
+        ComputationNode t1 = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}, {3, 4}})));
+        ComputationNode t2 = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 1}, {0, 0}})));
+        engine.loadAndCompute(t1);
+        engine.loadAndCompute(t2);
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(t1, t2));
+        engine.loadAndCompute(sum);
+        assertTrue(sum.isTransposedView());
+        assertArrayEquals(new double[]{2, 3}, sum.getMatrix()[0]);
+        assertArrayEquals(new double[]{3, 4}, sum.getMatrix()[1]);
+    }
+
+    @Test
+    public void testRun_TransposedView_Fail() {
+        ComputationNode t = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2, 3}})));
+        engine.loadAndCompute(t);
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                t, new ComputationNode(new double[][]{{1, 2, 3}})));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+    }
+
+    @Test
+    public void testRun_Fused_Pass() {
+        // T(A) + -(B + -T(C)) + A', once fused and once one node at a time
+        Random random = new Random(7);
+        double[][] a = randomMatrix(random, 6, 5);
+        double[][] b = randomMatrix(random, 5, 6);
+        double[][] c = randomMatrix(random, 6, 5);
+        double[][] d = randomMatrix(random, 5, 6);
+        double[][] expected = stepByStep(fusableTree(a, b, c, d));
+
+        ComputationNode root = engine.run(fusableTree(a, b, c, d));
+
+        assertEquals(5, root.getMatrix().length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], root.getMatrix()[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testRun_Fused_Mid_Pass() {
+        // -(A + B) negates the sum, 1 + -1 is 0.0 and only its negation is -0.0
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 0}}), new ComputationNode(new double[][]{{-1, 0}})));
+        ComputationNode root = engine.run(new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(sum)));
+
+        assertTrue(engine.getMetrics().getNodes().get(0).isFused());
+        assertArrayEquals(new double[]{-0.0, -0.0}, root.getMatrix()[0]);
+    }
+
+    @Test
+    public void testRun_Fused_Fail() {
+        // the shapes only disagree two levels below the root
+        ComputationNode inner = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                new ComputationNode(new double[][]{{1, 2}}),
+                new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                        new ComputationNode(new double[][]{{1, 2}})))));
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(inner));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+    }
+
+    @Test
+    public void testRun_WorkStealing_Pass() throws Exception {
+        // same tree, same result, whichever way the tasks reach the workers
+        Random random = new Random(11);
+        double[][] a = randomMatrix(random, 40, 30);
+        double[][] b = randomMatrix(random, 30, 40);
+        double[][] c = randomMatrix(random, 40, 30);
+        double[][] d = randomMatrix(random, 30, 40);
+        double[][] expected = stepByStep(fusableTree(a, b, c, d));
+
+        LinearAlgebraEngine stealing = new LinearAlgebraEngine(4, 8, SchedulingMode.WORK_STEALING);
+        try {
+            ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(
+                    new ComputationNode(copy(a)), fusableTree(a, b, c, d)));
+            double[][] sum = stealing.run(fusableTree(a, b, c, d)).getMatrix();
+            double[][] res = stealing.run(product).getMatrix();
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], sum[i], 0.0);
+            }
+            for (int i = 0; i < 40; i++) {
+                for (int j = 0; j < 40; j++) {
+                    double dot = 0;
+                    for (int k = 0; k < 30; k++) {
+                        dot += a[i][k] * expected[k][j];
+                    }
+                    assertEquals(dot, res[i][j], 1e-9);
+                }
+            }
+        } finally {
+            stealing.getExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testRun_Concurrent_Pass() throws Exception {
+        // several trees on one engine at once, each run keeps its own operands and metrics
+        Random random = new Random(12);
+        double[][] a = randomMatrix(random, 40, 30);
+        double[][] b = randomMatrix(random, 30, 40);
+        double[][] c = randomMatrix(random, 40, 30);
+        double[][] d = randomMatrix(random, 30, 40);
+        double[][] expected = stepByStep(fusableTree(a, b, c, d));
+        int engineNodes = engine.getMetrics().getNodes().size();
+
+        Thread[] jobs = new Thread[8];
+        double[][][] results = new double[jobs.length][][];
+        EngineMetrics[] metrics = new EngineMetrics[jobs.length];
+        for (int t = 0; t < jobs.length; t++) {
+            final int job = t;
+            metrics[job] = new EngineMetrics();
+            jobs[job] = new Thread(() -> results[job] = engine.run(fusableTree(a, b, c, d), metrics[job]).getMatrix());
+            jobs[job].start();
+        }
+        for (Thread job : jobs) {
+            job.join();
+        }
+        for (int t = 0; t < jobs.length; t++) {
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], results[t][i], 0.0);
+            }
+            assertEquals(metrics[0].getTotalFlops(), metrics[t].getTotalFlops());
+        }
+        assertEquals(engineNodes, engine.getMetrics().getNodes().size());
+    }
+
+    private static double[][] randomMatrix(Random random, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] ans = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            ans[i] = m[i].clone();
+        }
+        return ans;
+    }
+
+    // leaves get their own copies, the engine is free to reuse its operands' rows
+    private static ComputationNode fusableTree(double[][] a, double[][] b, double[][] c, double[][] d) {
+        a = copy(a);
+        b = copy(b);
+        c = copy(c);
+        d = copy(d);
+        ComputationNode ta = new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(
+                new ComputationNode(a)));
+        ComputationNode negTc = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(
+                new ComputationNode(ComputationNodeType.TRANSPOSE, Arrays.asList(new ComputationNode(c)))));
+        ComputationNode inner = new ComputationNode(ComputationNodeType.ADD, Arrays.asList(
+                new ComputationNode(b), negTc));
+        ComputationNode negInner = new ComputationNode(ComputationNodeType.NEGATE, Arrays.asList(inner));
+        return new ComputationNode(ComputationNodeType.ADD, Arrays.asList(ta, negInner, new ComputationNode(d)));
+    }
+
+    // evaluates the tree one node at a time, children before parents
+    private double[][] stepByStep(ComputationNode root) {
+        root.associativeNesting();
+        ComputationNode next = root.findResolvable();
+        while (next != null) {
+            engine.loadAndCompute(next);
+            next = root.findResolvable();
+        }
+        return root.getMatrix();
+    }
+
+    @Test
+    public void testRun_FileBacked_Pass(@org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws Exception {
+        java.nio.file.Path file = dir.resolve("a.laeb");
+        parser.BinaryMatrixFormat.write(new ComputationNode(new double[][]{{1, 2}, {3, 4}}), file);
+        parser.MatrixFile shared = new parser.MatrixFile(file);
+        ComputationNode a = new ComputationNode(shared);
+        ComputationNode b = new ComputationNode(shared);
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, Arrays.asList(a, b));
+
+        assertFalse(shared.isOpened());
+        engine.run(root);
+
+        assertArrayEquals(new double[]{7, 10}, root.getMatrix()[0]);
+        assertArrayEquals(new double[]{15, 22}, root.getMatrix()[1]);
     }
 
     @Test
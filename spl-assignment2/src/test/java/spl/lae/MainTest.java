@@ -124,4 +124,82 @@ public class MainTest {
         String outputContent = Files.readString(outputFile);
         assertFalse(outputContent.isEmpty(), "Output file should contain the error message");
     }
+
+    @Test
+    public void testMain_Compact_Pass() throws IOException {
+        Path inputFile = tempDir.resolve("input_compact.json");
+        Path outputFile = tempDir.resolve("output_compact.json");
+        Files.writeString(inputFile, "{\"operator\": \"-\", \"operands\": [[[1.0, 2.0], [3.0, 4.0]]]}");
+
+        String[] args = {"2", inputFile.toString(), outputFile.toString(), "--compact"};
+        Main.main(args);
+
+        assertEquals("", errContent.toString(), "Expected no errors in System.err");
+        assertEquals("{\"result\":[\n[-1.0,-2.0],\n[-3.0,-4.0]\n]}\n", Files.readString(outputFile));
+    }
+
+    @Test
+    public void testMain_Metrics_Pass() throws IOException {
+        Path inputFile = tempDir.resolve("input_metrics.json");
+        Path outputFile = tempDir.resolve("output_metrics.json");
+        Files.writeString(inputFile, "{\"operator\": \"*\", \"operands\": [[[1.0, 2.0]], [[3.0], [4.0]]]}");
+
+        String[] args = {"2", inputFile.toString(), outputFile.toString(), "--metrics"};
+        Main.main(args);
+
+        assertEquals("", errContent.toString(), "Expected no errors in System.err");
+        String metrics = Files.readString(tempDir.resolve("output_metrics.json" + Main.METRICS_SUFFIX));
+        assertTrue(metrics.contains("\"operator\" : \"MULTIPLY\""));
+        assertTrue(metrics.contains("\"flops\" : 4"));
+    }
+
+    @Test
+    public void testMain_ChainPlans_Pass() throws IOException {
+        // a reordered chain is reported in the metrics file only, stdout keeps just the worker report
+        Path inputFile = tempDir.resolve("input_chain.json");
+        Path outputFile = tempDir.resolve("output_chain.json");
+        Files.writeString(inputFile, "{\"operator\": \"*\", \"operands\": [[[1], [2], [3]], [[1, 2, 3]], [[1], [1], [1]]]}");
+
+        Main.main(new String[]{"2", inputFile.toString(), outputFile.toString()});
+        assertFalse(outContent.toString().contains("Multiply order"));
+
+        Main.main(new String[]{"2", inputFile.toString(), outputFile.toString(), "--metrics"});
+        assertFalse(outContent.toString().contains("Multiply order"));
+        assertEquals("", errContent.toString(), "Expected no errors in System.err");
+        String metrics = Files.readString(tempDir.resolve("output_chain.json" + Main.METRICS_SUFFIX));
+        assertTrue(metrics.contains("\"leftToRightFlops\" : 36"));
+    }
+
+    @Test
+    public void testMain_Binary_Pass() throws Exception {
+        // binary input is detected by its content, a .laeb output is written in binary
+        Path inputFile = tempDir.resolve("input.bin");
+        Path outputFile = tempDir.resolve("output.laeb");
+        parser.BinaryMatrixFormat.write(new parser.ComputationNode(parser.ComputationNodeType.NEGATE,
+                java.util.Arrays.asList(new parser.ComputationNode(new double[][]{{1.0, 2.0}}))), inputFile);
+
+        String[] args = {"2", inputFile.toString(), outputFile.toString()};
+        Main.main(args);
+
+        assertEquals("", errContent.toString(), "Expected no errors in System.err");
+        double[][] result = parser.BinaryMatrixFormat.read(outputFile).getMatrix();
+        assertEquals(-2.0, result[0][1]);
+    }
+
+    @Test
+    public void testMain_Compact_Fail() throws IOException {
+        String[] args = {"2", "in.json", "out.json", "--tiny"};
+        Main.main(args);
+        assertTrue(errContent.toString().contains("unknown option: --tiny"));
+    }
+
+    @Test
+    public void testMain_Serve_Fail() throws IOException {
+        // the socket's directory has to be private to the server's user
+        Path shared = Files.createDirectories(tempDir.resolve("shared"));
+        Files.setPosixFilePermissions(shared, java.nio.file.attribute.PosixFilePermissions.fromString("rwxrwxrwx"));
+        String[] args = {"2", "--socket", shared.resolve("lae.sock").toString()};
+        Main.main(args);
+        assertTrue(errContent.toString().contains("must only be accessible by its owner"));
+    }
 }
\ No newline at end of file